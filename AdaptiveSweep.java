@@ -0,0 +1,208 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Adaptive Sweep
+ * 
+ * Maps the response of one output column to one parameter without running a dense grid.
+ * It starts from a coarse set of points and then works in rounds: a point gets more
+ * replications (double what it has) while its confidence interval is wider than the
+ * tolerance, and once both ends of an interval are resolved it is cut in half if the
+ * output changes across it by more than the tolerance and the noise.  Everything found in
+ * a round is run as one parallel batch, and the sweep ends when nothing needs refining,
+ * the intervals reach the minimum step, or the run budget is spent.  Flat stretches of the
+ * curve end up with a few points and steep or noisy stretches with many.
+ * 
+ * Each point's seeds come from the master seed, the point's value and the replication
+ * number, so a sweep reproduces exactly and overlapping sweeps share cached results.
+ */
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.Future;
+
+public class AdaptiveSweep {
+
+	private SweepRunner	runner;
+	private String			column;				// the output being mapped
+	private double			tolerance;			// change in the output worth a new point
+	private double			minStep;				// the narrowest interval that is split
+	private int				replications;		// to start each point with
+	private int				maxReplications;
+	private int				maxRuns;				// budget for the whole sweep
+	private double			confidence;
+
+	public AdaptiveSweep(SweepRunner runner, String column, double tolerance,
+								double minStep, int replications, int maxReplications,
+								int maxRuns) {
+		if (tolerance <= 0) throw new IllegalArgumentException(
+				"tolerance must be positive: " + tolerance);
+		if (replications < 2) replications = 2;
+		this.runner = runner;
+		this.column = column;
+		this.tolerance = tolerance;
+		this.minStep = minStep;
+		this.replications = replications;
+		this.maxReplications = Math.max(maxReplications, replications);
+		this.maxRuns = maxRuns;
+		this.confidence = 0.95;
+	}
+
+	// map column against name from "from" to "to" (inclusive), starting from the given
+	// number of evenly spaced points; if out is not null the rounds and the final curve
+	// are printed to it
+	public List<Point> run(SimulationConfig base, String name, double from,
+			double to, int initialPoints, long masterSeed, PrintStream out) {
+		if (initialPoints < 2) initialPoints = 2;
+		TreeMap<Double, Point> points = new TreeMap<Double, Point>();
+		List<Point> work = new ArrayList<Point>();
+		for (int i = 0; i < initialPoints; i++) {
+			double x = from + (to - from) * i / (initialPoints - 1);
+			Point p = newPoint(base, name, x, masterSeed);
+			if (points.containsKey(p.getX())) continue;
+			points.put(p.getX(), p);
+			p.wanted = replications;
+			work.add(p);
+		}
+
+		int runs = 0;
+		int round = 0;
+		while (!work.isEmpty()) {
+			runs += runBatch(work);
+			round++;
+			if (out != null) {
+				out.printf("# round %d: %d points, %d runs", round, points.size(),
+						runs);
+				out.println();
+			}
+			if (runs >= maxRuns) break;
+
+			// more replications for noisy points, new points in steep intervals
+			work = new ArrayList<Point>();
+			for (Point p : points.values()) {
+				if (p.getHalfWidth(confidence) > tolerance
+						&& p.getCount() < maxReplications) {
+					p.wanted = Math.min(2 * p.getCount(), maxReplications);
+					work.add(p);
+				}
+			}
+			List<Point> sorted = new ArrayList<Point>(points.values());
+			for (int i = 1; i < sorted.size(); i++) {
+				Point a = sorted.get(i - 1);
+				Point b = sorted.get(i);
+				if (b.getX() - a.getX() < 2 * minStep) continue;
+				// only split on a change that is real, not noise still being resolved
+				if (!isResolved(a) || !isResolved(b)) continue;
+				double change = Math.abs(b.getMean() - a.getMean());
+				if (change <= tolerance
+						|| change <= a.getHalfWidth(confidence)
+								+ b.getHalfWidth(confidence)) continue;
+				Point mid = newPoint(base, name, (a.getX() + b.getX()) / 2, masterSeed);
+				if (points.containsKey(mid.getX())) continue;  // whole numbers run out
+				mid.wanted = replications;
+				points.put(mid.getX(), mid);
+				work.add(mid);
+			}
+		}
+
+		List<Point> curve = new ArrayList<Point>(points.values());
+		if (out != null) {
+			out.println(name + ", " + column + ", halfWidth, replications");
+			for (Point p : curve) {
+				out.printf("%s, %.4f, %.4f, %d", p.config.get(name), p.getMean(), p
+						.getHalfWidth(confidence), p.getCount());
+				out.println();
+			}
+		}
+		return curve;
+	}
+
+	// is a point's mean known as well as it is going to be?
+	private boolean isResolved(Point p) {
+		return p.getHalfWidth(confidence) <= tolerance
+				|| p.getCount() >= maxReplications;
+	}
+
+	// run every point's missing replications as one batch; returns the number of runs
+	private int runBatch(List<Point> work) {
+		List<Future<SweepResult>> futures = new ArrayList<Future<SweepResult>>();
+		List<Point> owners = new ArrayList<Point>();
+		for (Point p : work) {
+			for (int j = p.getCount(); j < p.wanted; j++) {
+				futures.add(runner.submit(p.config.with("seed", Long
+						.toString(SimRandom.seedFor(p.seed, j)))));
+				owners.add(p);
+			}
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			owners.get(i).stats.add(SweepRunner.await(futures.get(i)).getValue(
+					column));
+		}
+		return futures.size();
+	}
+
+	// a point at x, snapped to what the parameter can hold (eg. a whole number)
+	private static Point newPoint(SimulationConfig base, String name, double x,
+			long masterSeed) {
+		SimulationConfig c = base.copy().set(name, Math.round(x * 1e9) / 1e9);
+		double snapped = c.getDouble(name);
+		return new Point(c, snapped, SimRandom.seedFor(masterSeed, Double
+				.doubleToLongBits(snapped)));
+	}
+
+	// one point of the curve and the replications run at it
+	public static class Point {
+		private SimulationConfig	config;
+		private double					x;
+		private long					seed;		// replication j runs with seedFor(seed, j)
+		private RunningStatistics	stats;
+		private int						wanted;	// replications asked for so far
+
+		private Point(SimulationConfig config, double x, long seed) {
+			this.config = config;
+			this.x = x;
+			this.seed = seed;
+			this.stats = new RunningStatistics();
+			this.wanted = 0;
+		}
+
+		// get the parameter value
+		public double getX() {
+			return x;
+		}
+
+		// get the config of the point (the seed is set per replication)
+		public SimulationConfig getConfig() {
+			return config;
+		}
+
+		// get the mean of the output over the replications
+		public double getMean() {
+			return stats.getMean();
+		}
+
+		// get the half width of the confidence interval of the mean
+		public double getHalfWidth(double confidence) {
+			return stats.getHalfWidth(confidence);
+		}
+
+		// get the number of replications run
+		public int getCount() {
+			return (int) stats.getCount();
+		}
+	}
+
+	// map the average spread of the CI model against delta from 0.1 to 100, the range
+	// CISimulation.main sweeps in 1000 steps:
+	// AdaptiveSweep [tolerance] [threads] [masterSeed]
+	public static void main(String[] args) {
+		double tolerance = (args.length > 0) ? Double.parseDouble(args[0]) : 1.0;
+		SweepRunner runner = (args.length > 1) ? new SweepRunner(Integer
+				.parseInt(args[1])) : new SweepRunner();
+		long masterSeed = (args.length > 2) ? Long.parseLong(args[2]) : 0;
+
+		AdaptiveSweep sweep = new AdaptiveSweep(runner, "spread", tolerance, 0.1,
+				3, 48, 1000);
+		sweep.run(new SimulationConfig(SimulationConfig.CI), "delta", 0.1, 100, 9,
+				masterSeed, System.out);
+		runner.shutdown();
+	}
+}
@@ -35,7 +35,7 @@ public interface Agent extends Comparable<Agent> {
 	// submit an order into the simulation with specific details
 	boolean submitOrder(boolean isLimit, boolean isSell, int size, double price,
 			int expiration);
-	
+
 	// print final data for the simulation
 	void printFinalData(double finalPrice);
 }
\ No newline at end of file
@@ -0,0 +1,455 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Agent Population
+ * 
+ * The automatic agents of a simulation stored as columns of primitive arrays (money,
+ * shares, type, ...) instead of one object per agent, so populations of millions of agents
+ * fit in memory and bulk operations like paying interest are tight loops over arrays.
+ * 
+ * Zero intelligence and chartist agents share their parameters per type; CI agents draw
+ * their own, which are kept in per agent arrays.  Agents are seen from the rest of the
+ * simulation (the limit order book, listeners) through PopulationAgent views, and their
+ * decisions are made by the kernels here, which follow PracticeAgent, ChartistAgent and
+ * CIAgent.  All agents draw from the population's random number generator (zero
+ * intelligence decisions from a pre-generated ZeroIntelOrderFlow per type), so a compact
+ * run is statistically the same as an object run but not the same sample path.
+ */
+import java.util.Random;
+
+public class AgentPopulation {
+
+	public static final int		ZERO_INTEL	= 0;
+	public static final int		CHARTIST		= 2;
+	public static final int		CI				= 3;
+	public static final int		NUM_TYPES	= 4;
+
+	private static final int	FUND_PRICE	= 50;  // as in PracticeAgent and ChartistAgent
+
+	private int						N;
+	private int						size;
+	private LimitOrderBook		lob;
+	private DAS						das;
+	private Random					random;
+
+	// per agent state
+	private double[]				money;
+	private int[]					shares;
+	private int[]					type;
+	private int[]					pid;
+	private int[]					tradesCompleted;
+	private PopulationAgent[]	views;  // made the first time an agent is needed
+	private InterestAccrual		accrual;  // pays interest lazily, null when paid eagerly
+	private int[]					epoch;  // payments of the accrual each agent has settled
+
+	// per type parameters of zero intel and chartist agents
+	private double[]				limitProb;
+	private double[]				sellProb;
+	private double[]				interval;
+	private int[]					exp;
+	private boolean[]				typeSet;
+	private ZeroIntelOrderFlow[]	flows;  // pre-generated decisions of each type
+	private int						history;  // how far back chartists look
+	private boolean				chase;
+
+	// per agent parameters of CI agents (allocated with the first CI agent)
+	private double[]				fund;
+	private double[]				chart;
+	private double[]				noise;
+	private int[]					li;
+	private double[]				ki;
+	private double					fundval;
+	private int						lifetime;
+	private double					tickSize;
+
+	// quoteCI's weights and draws of the agents in a batch (grown as needed)
+	private double[]				batchFund;
+	private double[]				batchChart;
+	private double[]				batchNoise;
+	private double[]				batchKi;
+	private double[]				batchE;
+	private double[]				batchPhat;
+
+	// create an empty population of up to number agents trading on lob in das
+	public AgentPopulation(int number, LimitOrderBook lob, DAS das, Random random) {
+		this.N = number;
+		this.size = 0;
+		this.lob = lob;
+		this.das = das;
+		this.random = random;
+
+		this.money = new double[number];
+		this.shares = new int[number];
+		this.type = new int[number];
+		this.pid = new int[number];
+		this.tradesCompleted = new int[number];
+		this.views = new PopulationAgent[number];
+		this.epoch = new int[number];
+
+		this.limitProb = new double[NUM_TYPES];
+		this.sellProb = new double[NUM_TYPES];
+		this.interval = new double[NUM_TYPES];
+		this.exp = new int[NUM_TYPES];
+		this.typeSet = new boolean[NUM_TYPES];
+		this.flows = new ZeroIntelOrderFlow[NUM_TYPES];
+		this.chase = true;  // chartist agent types hard coded as in ChartistAgent
+	}
+
+	// add a zero intelligence agent (a PracticeAgent)
+	public int addZeroIntel(double startingMoney, int startingShares, int id,
+			double lp, double sp, double interval, int ex) {
+		setTypeParameters(ZERO_INTEL, lp, sp, interval, ex);
+		return add(ZERO_INTEL, startingMoney, startingShares, id);
+	}
+
+	// add a chartist agent that looks the given number of rounds back
+	public int addChartist(double startingMoney, int startingShares, int id,
+			double lp, double sp, double interval, int ex, int history) {
+		setTypeParameters(CHARTIST, lp, sp, interval, ex);
+		this.history = history;
+		return add(CHARTIST, startingMoney, startingShares, id);
+	}
+
+	// add a CI agent with its own weights; val, tau and delta are the same for all of them
+	public int addCI(double startingMoney, int startingShares, int id,
+			double val, int tau, double g1, double g2, double n, int Li,
+			double k, double delta) {
+		if (fund == null) {
+			fund = new double[N];
+			chart = new double[N];
+			noise = new double[N];
+			li = new int[N];
+			ki = new double[N];
+		}
+		fundval = val;
+		lifetime = tau;
+		tickSize = delta;
+		int i = add(CI, startingMoney, startingShares, id);
+		fund[i] = g1;
+		chart[i] = g2;
+		noise[i] = n;
+		li[i] = Li;
+		ki[i] = k;
+		return i;
+	}
+
+	private int add(int t, double startingMoney, int startingShares, int id) {
+		if (size >= N) throw new RuntimeException(
+				"cant add anymore agents... what are you doing wrong?");
+		money[size] = startingMoney;
+		shares[size] = startingShares;
+		type[size] = t;
+		pid[size] = id;
+		tradesCompleted[size] = 0;
+		epoch[size] = (accrual == null) ? 0 : accrual.join();
+		return size++;
+	}
+
+	// zero intel and chartist parameters are shared by every agent of the type
+	private void setTypeParameters(int t, double lp, double sp, double iv, int ex) {
+		if (typeSet[t]
+				&& (limitProb[t] != lp || sellProb[t] != sp || interval[t] != iv || exp[t] != ex)) {
+			throw new IllegalArgumentException(
+					"agents of the same type must share their parameters");
+		}
+		limitProb[t] = lp;
+		sellProb[t] = sp;
+		interval[t] = iv;
+		exp[t] = ex;
+		typeSet[t] = true;
+	}
+
+	// get the number of agents added so far
+	public int size() {
+		return size;
+	}
+
+	// get the number of agents the population can hold
+	public int getCapacity() {
+		return N;
+	}
+
+	// get the agent at index as an Agent; the same view is returned every time
+	public PopulationAgent getAgent(int i) {
+		PopulationAgent a = views[i];
+		if (a == null) {
+			a = new PopulationAgent(this, i);
+			views[i] = a;
+		}
+		return a;
+	}
+
+	// get number of agents of a certain type
+	public int count(int t) {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (type[i] == t) count++;
+		}
+		return count;
+	}
+
+	// apply interest rate and dividends to every agent's money, as
+	// AutomaticTraders.applyInterestRate does one agent at a time
+	public void applyInterestRate(double ir, double div) {
+		settleAll();
+		double[] m = money;
+		int[] s = shares;
+		for (int i = 0; i < size; i++) {
+			m[i] = m[i] * ir + s[i] * div;
+		}
+	}
+
+	// have interest and dividends paid to every agent through the given accrual
+	public void setInterestAccrual(InterestAccrual accrual) {
+		settleAll();
+		for (int i = 0; i < size; i++) {
+			if (this.accrual != null) this.accrual.leave(epoch[i]);
+			epoch[i] = (accrual == null) ? 0 : accrual.join();
+		}
+		this.accrual = accrual;
+	}
+
+	// catch agent i up on the interest and dividends paid since it last settled
+	private void settle(int i) {
+		if (accrual != null) accrual.settle(money, shares, epoch, i);
+	}
+
+	private void settleAll() {
+		if (accrual == null) return;
+		for (int i = 0; i < size; i++) {
+			settle(i);
+		}
+	}
+
+	// get the total money held by the population
+	public double getTotalMoney() {
+		settleAll();
+		double total = 0;
+		for (int i = 0; i < size; i++) {
+			total += money[i];
+		}
+		return total;
+	}
+
+	// get the total shares held by the population
+	public long getTotalShares() {
+		long total = 0;
+		for (int i = 0; i < size; i++) {
+			total += shares[i];
+		}
+		return total;
+	}
+
+	public int getType(int i) {
+		return type[i];
+	}
+
+	public int getPID(int i) {
+		return pid[i];
+	}
+
+	public double getMoney(int i) {
+		settle(i);
+		return money[i];
+	}
+
+	public boolean setMoney(int i, double newMoney) {
+		settle(i);
+		if (newMoney < 0) return false;  // can't owe money in this simulation
+		money[i] = newMoney;
+		return true;
+	}
+
+	public int getShares(int i) {
+		settle(i);
+		return shares[i];
+	}
+
+	public boolean setShares(int i, int newShares) {
+		settle(i);
+		if (newShares < 0) return false;
+		shares[i] = newShares;
+		return true;
+	}
+
+	public int getTradesCompleted(int i) {
+		return tradesCompleted[i];
+	}
+
+	// have agent i decide on and submit an order in the given round
+	public boolean submitOrder(int i, int round) {
+		switch (type[i]) {
+		case ZERO_INTEL:
+			return zeroIntelOrder(i, round);
+		case CHARTIST:
+			return chartistOrder(i, round);
+		case CI:
+			return ciOrder(i, round);
+		default:
+			throw new RuntimeException("no kernel for agent type " + type[i]);
+		}
+	}
+
+	// have agent i submit a specific order, as ChartistAgent and CIAgent do (crossing
+	// limit orders become market orders)
+	public boolean submitOrder(int i, boolean isLimit, boolean isSell, int size,
+			double price, int expiration) {
+		Agent a = getAgent(i);
+		boolean success;
+		if (isLimit) {
+			if (isSell) {
+				if (price <= lob.getBestBid()) success = lob.submitMarketOrder(
+						true, size, a);
+				else success = lob.submitLimitSellOrder(size, price, expiration, a);
+			} else {
+				if (lob.getBestAsk() > 0 && price >= lob.getBestAsk()) success = lob
+						.submitMarketOrder(false, size, a);
+				else success = lob.submitLimitBuyOrder(size, price, expiration, a);
+			}
+		} else {
+			success = lob.submitMarketOrder(isSell, size, a);
+		}
+		if (success) tradesCompleted[i]++;
+		return success;
+	}
+
+	// PracticeAgent: a limit order with probability lp (else a market order), a sell with
+	// probability sp (else a buy)
+	private boolean zeroIntelOrder(int i, int round) {
+		boolean success = randomOrder(i, round);
+		if (success) tradesCompleted[i]++;
+		return success;
+	}
+
+	// ChartistAgent: chase a rising or falling price with a market order, otherwise
+	// behave like a zero intelligence agent
+	private boolean chartistOrder(int i, int round) {
+		boolean success;
+		Double[] hist = { 1.0, 0.0, 2.0 };
+		if (round > history) hist = das.getHistory(history);
+
+		if (isAscending(hist)) {
+			success = lob.submitMarketOrder(!chase, 1, getAgent(i));
+		} else if (isDescending(hist)) {
+			success = lob.submitMarketOrder(chase, 1, getAgent(i));
+		} else {
+			success = randomOrder(i, round);
+		}
+		if (success) tradesCompleted[i]++;
+		return success;
+	}
+
+	// the random order of the zero intelligence logic, read from the type's order flow
+	private boolean randomOrder(int i, int round) {
+		int t = type[i];
+		ZeroIntelOrderFlow flow = flows[t];
+		if (flow == null) {
+			flow = new ZeroIntelOrderFlow(SimRandom.split(random), limitProb[t],
+					sellProb[t], interval[t]);
+			flows[t] = flow;
+		}
+		int k = flow.next();
+		Agent a = getAgent(i);
+		// limit
+		if (flow.isLimit(k)) {
+			int expiration = lob.areExpirationsOn() ? round + exp[t] : round;
+			// sell
+			if (flow.isSell(k)) {
+				double newprice = flow.getOffset(k);
+				if (lob.getBestBid() < 0) newprice += FUND_PRICE;
+				else newprice += lob.getBestBid();
+				return lob.submitLimitSellOrder(1, newprice, expiration, a);
+			}
+			// buy
+			double newprice = flow.getOffset(k);
+			if (lob.getBestAsk() < 0) newprice += (FUND_PRICE - interval[t]);
+			else newprice += (lob.getBestAsk() - interval[t]);
+			return lob.submitLimitBuyOrder(1, newprice, expiration, a);
+		}
+		// market
+		return lob.submitMarketOrder(flow.isSell(k), 1, a);
+	}
+
+	// CIAgent: a limit order priced off the expected future price, from fundamentalist,
+	// chartist and noise components
+	private boolean ciOrder(int i, int round) {
+		double p = ciPrice(round);
+		double rbar = 0.0;
+
+		double e = random.nextGaussian() * 0.1;
+		double realtau = (double) lifetime / 100.0;
+		double phat = CIPricingKernel.expectedPrice(p, fundval, realtau, fund[i],
+				chart[i], noise[i], rbar, e);
+		double price = CIPricingKernel.quotePrice(phat, p, ki[i], tickSize);
+
+		// price is expected to increase
+		return submitCI(i, round, price, phat >= p);
+	}
+
+	// the current price the CI agents quote against; CIAgent reads it from the whole
+	// history each time
+	private double ciPrice(int round) {
+		// CIAgent only averages the spot return over li once the round is past the end of
+		// the history, and the history always has a price for every round, so its chartist
+		// term is always 0 (checked when run with -ea, reading the history is O(round))
+		assert das.getHistory().length >= round : "CIAgent would average the spot"
+				+ " return";
+		if (round == 0) return fundval;
+		return das.getHistory(1)[0];
+	}
+
+	// quote the orders of the CI agents agents[0..n-1] in the given round at once, with
+	// one noise draw each in order, so the prices are exactly those ciOrder would give one
+	// at a time (the batch version of the CI kernel); the orders go in with submitCI
+	public void quoteCI(int round, int[] agents, int n, double[] price, boolean[] buy) {
+		if (batchE == null || batchE.length < n) {
+			int length = Math.max(n, 64);
+			batchFund = new double[length];
+			batchChart = new double[length];
+			batchNoise = new double[length];
+			batchKi = new double[length];
+			batchE = new double[length];
+			batchPhat = new double[length];
+		}
+		for (int k = 0; k < n; k++) {
+			int a = agents[k];
+			if (type[a] != CI) throw new IllegalArgumentException("agent " + a
+					+ " is not a CI agent");
+			batchFund[k] = fund[a];
+			batchChart[k] = chart[a];
+			batchNoise[k] = noise[a];
+			batchKi[k] = ki[a];
+			batchE[k] = random.nextGaussian() * 0.1;
+		}
+		double p = ciPrice(round);
+		double realtau = (double) lifetime / 100.0;
+		CIPricingKernel.expectedPrices(p, fundval, realtau, batchFund, batchChart,
+				batchNoise, 0, 0.0, batchE, batchPhat, n);
+		CIPricingKernel.quotePrices(batchPhat, p, batchKi, 0, tickSize, price, buy,
+				n);
+	}
+
+	// submit CI agent i's order quoted for the given round, a buy if it expects the price
+	// to increase
+	public boolean submitCI(int i, int round, double price, boolean buy) {
+		if (buy) return lob.submitLimitBuyOrder(1, price, round + lifetime,
+				getAgent(i));
+		return lob.submitLimitSellOrder(1, price, round + lifetime, getAgent(i));
+	}
+
+	private static boolean isAscending(Double[] list) {
+		for (int i = 0; i < list.length - 1; i++) {
+			if (list[i] >= list[i + 1]) return false;
+			if (list[i] < 0 || list[i + 1] < 0) return false;
+		}
+		return true;
+	}
+
+	private static boolean isDescending(Double[] list) {
+		for (int i = 0; i < list.length - 1; i++) {
+			if (list[i] <= list[i + 1]) return false;
+			if (list[i] < 0 || list[i + 1] < 0) return false;
+		}
+		return true;
+	}
+}
@@ -2,6 +2,7 @@
  * Author: Dylan Bowman
  * 
  * Automatic Traders - class that represents the group of automatic traders/agents in the simulation
+ * The agents are either objects added one at a time or a compact AgentPopulation.
  */
 import java.util.*;
 
@@ -11,13 +12,46 @@ public class AutomaticTraders {
 	private int			i;
 	private Agent[]	agents;
 	private Random		random;
+	private boolean	sorted;  // are the agents already in PID order?
+	private AgentPopulation	population;  // the agents, when they are stored compactly
+
+	// the agents grouped by concrete type, so each group's call site only ever sees one
+	// class and the JIT can inline its decision logic (null until first needed), and the
+	// group and place in it of agents[k]
+	private PracticeAgent[]	zeroIntel;
+	private ChartistAgent[]	chartists;
+	private CIAgent[]			ciAgents;
+	private Agent[]			others;
+	private byte[]				group;
+	private int[]				member;
 
 	// initialize with the number of automatic traders/agents in the sim
 	public AutomaticTraders(int number) {
+		this(number, new SimRandom());
+	}
+
+	// same as above, but picks agents with the given random number generator
+	public AutomaticTraders(int number, Random random) {
 		this.N = number;
 		this.i = 0;
 		this.agents = new Agent[number];
-		this.random = new Random();
+		this.random = random;
+		this.sorted = false;
+	}
+
+	// use a (filled) compact population as the agents, picking them with random
+	public AutomaticTraders(AgentPopulation population, Random random) {
+		this.N = population.size();
+		this.i = N;
+		this.agents = null;  // views are only made for printing
+		this.random = random;
+		this.sorted = false;
+		this.population = population;
+	}
+
+	// get the compact population of the agents, or null if they are objects
+	public AgentPopulation getPopulation() {
+		return population;
 	}
 
 	// get the number of automatic agents
@@ -27,6 +61,7 @@ public class AutomaticTraders {
 
 	// get number of agents of a certain type
 	public int getNumberAgents(int type) {
+		if (population != null) return population.count(type);
 		int count = 0;
 		for (int i = 0; i < N; i++) {
 			if (agents[i].getType() == type) count++;
@@ -36,29 +71,125 @@ public class AutomaticTraders {
 
 	// add an agent to the group
 	public void addAgent(Agent a) {
+		if (population != null) throw new RuntimeException(
+				"add agents to the population, not the automatic traders");
 		if (i >= N) throw new RuntimeException(
 				"cant add anymore agents... what are you doing wrong?");
 		agents[i++] = a;
+		sorted = false;
+		zeroIntel = null;
 	}
 
 	// grab a random agents from the group
 	public Agent randomAgent() {
 		if (i < N) throw new RuntimeException(
 				"shouldnt be choosing random agent when i < n");
+		if (population != null) return population.getAgent(random.nextInt(N));
 		return agents[random.nextInt(N)];
 	}
 
+	// have a random agent submit an order in the given round; the agent is chosen exactly
+	// as randomAgent() chooses it (one draw of an index), so it is the very same agent
+	// whatever order the agents were added in
+	public boolean submitRandomOrder(int round) {
+		if (i < N) throw new RuntimeException(
+				"shouldnt be choosing random agent when i < n");
+		int k = random.nextInt(N);
+		if (population != null) return population.submitOrder(k, round);
+		if (zeroIntel == null) groupAgents();
+		switch (group[k]) {
+		case 0:
+			return zeroIntel[member[k]].submitOrder(round);
+		case 1:
+			return chartists[member[k]].submitOrder(round);
+		case 2:
+			return ciAgents[member[k]].submitOrder(round);
+		default:
+			return others[member[k]].submitOrder(round);
+		}
+	}
+
+	// split the agents into one array per concrete type, keeping their order, and note
+	// where each agent went
+	private void groupAgents() {
+		List<PracticeAgent> zi = new ArrayList<PracticeAgent>();
+		List<ChartistAgent> ch = new ArrayList<ChartistAgent>();
+		List<CIAgent> ci = new ArrayList<CIAgent>();
+		List<Agent> rest = new ArrayList<Agent>();
+		group = new byte[N];
+		member = new int[N];
+		for (int j = 0; j < N; j++) {
+			Agent a = agents[j];
+			if (a.getClass() == PracticeAgent.class) {
+				group[j] = 0;
+				member[j] = zi.size();
+				zi.add((PracticeAgent) a);
+			} else if (a.getClass() == ChartistAgent.class) {
+				group[j] = 1;
+				member[j] = ch.size();
+				ch.add((ChartistAgent) a);
+			} else if (a.getClass() == CIAgent.class) {
+				group[j] = 2;
+				member[j] = ci.size();
+				ci.add((CIAgent) a);
+			} else {
+				group[j] = 3;
+				member[j] = rest.size();
+				rest.add(a);
+			}
+		}
+		chartists = ch.toArray(new ChartistAgent[ch.size()]);
+		ciAgents = ci.toArray(new CIAgent[ci.size()]);
+		others = rest.toArray(new Agent[rest.size()]);
+		zeroIntel = zi.toArray(new PracticeAgent[zi.size()]);
+	}
+
+	// have interest and dividends paid to every agent through the given accrual
+	public void setInterestAccrual(InterestAccrual accrual) {
+		if (population != null) {
+			population.setInterestAccrual(accrual);
+			return;
+		}
+		for (int j = 0; j < i; j++) {
+			if (!(agents[j] instanceof InterestBearingAgent)) {
+				throw new IllegalArgumentException("agent " + agents[j].getPID()
+						+ " can't be paid interest lazily");
+			}
+			((InterestBearingAgent) agents[j]).setInterestAccrual(accrual);
+		}
+	}
+
 	// apply interest rate and dividends to the agents' money totals
 	public void applyInterestRate(double ir, double div) {
+		if (population != null) {
+			population.applyInterestRate(ir, div);
+			return;
+		}
 		for (Agent a : agents) {
 			a.setMoney(a.getMoney() * ir);
 			a.setMoney(a.getMoney() + a.getShares() * div);
 		}
 	}
 
+	// put the agents in PID order for printing, only sorting when something changed
+	private void sortAgents() {
+		if (sorted) return;
+		if (population != null) {
+			agents = new Agent[N];
+			for (int k = 0; k < N; k++) {
+				agents[k] = population.getAgent(k);
+			}
+		}
+		Arrays.sort(agents);
+		sorted = true;
+		// the groups follow the order of the agents
+		if (population == null && i == N) groupAgents();
+		else zeroIntel = null;
+	}
+
 	// print the status of all the agents in the AutomaticTraders object
 	public void print() {
-		Arrays.sort(agents);
+		sortAgents();
 
 		System.out.println("+----------------------------+");
 		System.out.println("|      Status of Agents      |");
@@ -77,7 +208,7 @@ public class AutomaticTraders {
 
 	// print the agent's final data
 	public void printFinalData(double finalPrice) {
-		Arrays.sort(agents);
+		sortAgents();
 
 		for (int i = 0; i < agents.length; i++) {
 			agents[i].printFinalData(finalPrice);
@@ -86,7 +217,7 @@ public class AutomaticTraders {
 
 	// print the status of all of the agents of a certain type
 	public void printType(int type) {
-		Arrays.sort(agents);
+		sortAgents();
 
 		System.out.println("+------------------------------+");
 		System.out.println("|        Status of Agents      |");
@@ -0,0 +1,251 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Background Simulation
+ * 
+ * Runs a DAS on its own thread as fast as it can (or at a target number of rounds per
+ * second) so a GUI can watch it without stepping it.  The GUI never touches the simulation
+ * while it runs: once a frame it asks for a snapshot, and between two rounds the simulation
+ * thread copies what is on screen (the best orders of each side, the prices and the user's
+ * balances) into a new immutable Snapshot and publishes it through a volatile field.  A
+ * snapshot is only built when one was asked for, so the cost is a few hundred orders per
+ * frame whatever the speed of the run.
+ * 
+ * The sorted sides are kept by two OrderBookListModels that no Swing component listens to,
+ * so copying the best orders doesn't need the whole book.  Only touch the simulation from
+ * another thread while this is stopped.
+ */
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+public class BackgroundSimulation implements Runnable {
+
+	private static final long		MAX_PARK	= 10000000;  // 10 ms, so requests are answered
+
+	private DAS							das;
+	private int							depth;  // orders per side in a snapshot
+	private OrderBookListModel		bids;
+	private OrderBookListModel		asks;
+	private volatile boolean		running;
+	private volatile boolean		snapshotWanted;
+	private volatile double			targetRate;  // rounds per second, 0 runs flat out
+	private volatile Snapshot		snapshot;
+	private Thread						thread;
+	private ArrayList<Runnable>	snapshotTasks;
+
+	// measured speed, updated on the simulation thread between snapshots
+	private long						lastRound;
+	private long						lastTime;
+	private double						roundsPerSecond;
+
+	public BackgroundSimulation(DAS das, int depth) {
+		this.das = das;
+		this.depth = depth;
+		this.bids = new OrderBookListModel(das.getLOB(), false);
+		this.asks = new OrderBookListModel(das.getLOB(), true);
+		this.running = false;
+		this.targetRate = 0;
+		this.snapshotTasks = new ArrayList<Runnable>();
+		this.snapshot = new Snapshot(this);
+	}
+
+	// start running the simulation in the background
+	public void start() {
+		if (running) return;
+		running = true;
+		thread = new Thread(this, "das-simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// stop the simulation between two rounds and wait for its thread, after which the
+	// simulation can be used on the calling thread again
+	public void stop() {
+		running = false;
+		if (thread == null) return;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	// is the simulation thread running (it stops by itself when the simulation is done)
+	public boolean isRunning() {
+		return running;
+	}
+
+	// set the target speed in rounds per second (0 or less runs flat out)
+	public void setTargetRate(double roundsPerSecond) {
+		this.targetRate = Math.max(0, roundsPerSecond);
+		Thread t = thread;
+		if (t != null) LockSupport.unpark(t);  // wake it from a long wait
+	}
+
+	public double getTargetRate() {
+		return targetRate;
+	}
+
+	// run task on the simulation thread just before every snapshot is published, for views
+	// that sample the simulation themselves (add tasks before starting)
+	public void addSnapshotTask(Runnable task) {
+		snapshotTasks.add(task);
+	}
+
+	// ask for a fresh snapshot, to be published after the current round
+	public void requestSnapshot() {
+		snapshotWanted = true;
+	}
+
+	// get the latest snapshot published
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	// stop following the book
+	public void detach() {
+		bids.detach();
+		asks.detach();
+	}
+
+	public void run() {
+		lastRound = das.getCurrentRound();
+		lastTime = System.nanoTime();
+		double rate = targetRate;
+		long baseTime = lastTime;
+		long baseRound = lastRound;
+		while (running && !das.isDone()) {
+			das.nextBid();
+			if (snapshotWanted) publish();
+
+			// keep to the target rate by waiting until the next round is due
+			if (targetRate != rate) {
+				rate = targetRate;
+				baseTime = System.nanoTime();
+				baseRound = das.getCurrentRound();
+			}
+			if (rate > 0) {
+				long due = baseTime
+						+ (long) ((das.getCurrentRound() - baseRound) * 1e9 / rate);
+				long wait;
+				while (running && targetRate == rate
+						&& (wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(Math.min(wait, MAX_PARK));
+					if (snapshotWanted) publish();
+				}
+			}
+		}
+		publish();
+		running = false;
+	}
+
+	// copy the visible state into a new snapshot and hand it over
+	private void publish() {
+		snapshotWanted = false;
+		long now = System.nanoTime();
+		int round = das.getCurrentRound();
+		if (now - lastTime >= 100000000) {
+			roundsPerSecond = (round - lastRound) * 1e9 / (now - lastTime);
+			lastRound = round;
+			lastTime = now;
+		}
+		for (int i = 0; i < snapshotTasks.size(); i++) {
+			snapshotTasks.get(i).run();
+		}
+		snapshot = new Snapshot(this);
+	}
+
+	// what the GUI shows of the simulation at the end of one round
+	public static class Snapshot {
+		private final int			round;
+		private final boolean	done;
+		private final double		midpoint;
+		private final double		spread;
+		private final double		lastPrice;
+		private final int			userShares;
+		private final String		userMoney;
+		private final int			numBids;
+		private final int			numAsks;
+		private final String[]	bids;  // best first
+		private final String[]	asks;
+		private final double		roundsPerSecond;
+
+		private Snapshot(BackgroundSimulation bg) {
+			DAS das = bg.das;
+			LimitOrderBook lob = das.getLOB();
+			this.round = das.getCurrentRound();
+			this.done = das.isDone();
+			this.midpoint = lob.getMidpointPrice();
+			this.spread = lob.getMarketSpread();
+			this.lastPrice = lob.getLastTransactionPrice();
+			this.userShares = das.getUserShares();
+			this.userMoney = das.getFormattedUserMoney();
+			this.numBids = bg.bids.getSize();
+			this.numAsks = bg.asks.getSize();
+			this.bids = top(bg.bids, bg.depth);
+			this.asks = top(bg.asks, bg.depth);
+			this.roundsPerSecond = bg.roundsPerSecond;
+		}
+
+		private static String[] top(OrderBookListModel side, int depth) {
+			String[] s = new String[Math.min(depth, side.getSize())];
+			for (int i = 0; i < s.length; i++) {
+				s[i] = side.getOrder(i).toString();
+			}
+			return s;
+		}
+
+		public int getRound() {
+			return round;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		public double getMidpointPrice() {
+			return midpoint;
+		}
+
+		public double getMarketSpread() {
+			return spread;
+		}
+
+		public double getLastTransactionPrice() {
+			return lastPrice;
+		}
+
+		public int getUserShares() {
+			return userShares;
+		}
+
+		public String getFormattedUserMoney() {
+			return userMoney;
+		}
+
+		// get the number of orders in the buy book (more than getBids may hold)
+		public int getBuyBookSize() {
+			return numBids;
+		}
+
+		public int getSellBookSize() {
+			return numAsks;
+		}
+
+		// get the best bids, formatted as LimitOrder.toString
+		public String[] getBids() {
+			return bids;
+		}
+
+		public String[] getAsks() {
+			return asks;
+		}
+
+		// get the measured speed of the run in rounds per second
+		public double getRoundsPerSecond() {
+			return roundsPerSecond;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interface for BookChangeListener
+ * 
+ * A book change listener is told every time a limit order enters or leaves the buy or sell
+ * book of a LimitOrderBook, so a view of the book can be kept up to date without copying it.
+ * An order that is polled during matching and put back (a partial fill, or a failed check)
+ * is reported as removed and then added again.  Like a BookListener it is called on the
+ * simulation thread in the middle of matching.
+ */
+
+public interface BookChangeListener {
+	// order now rests in the buy or sell book (order.getType() tells which)
+	void orderAdded(LimitOrder order);
+
+	// order left the buy or sell book (traded, expired or thrown away)
+	void orderRemoved(LimitOrder order);
+}
@@ -0,0 +1,21 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interface for BookListener
+ * 
+ * A book listener is told about the activity in a LimitOrderBook as it happens.  Listeners
+ * are called on the simulation thread in the middle of matching, so they should only record
+ * what happened and never submit orders back into the book.
+ */
+
+public interface BookListener {
+	// an order was submitted to the book by agent, before any matching happens
+	void orderSubmitted(Agent agent, boolean isLimit, boolean isSell, int size,
+			double price);
+
+	// a trade cleared between buyer and seller for size shares at price
+	void tradeCleared(Agent buyer, Agent seller, int size, double price);
+
+	// count limit orders expired out of the book in the given round
+	void ordersExpired(int round, int count);
+}
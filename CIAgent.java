@@ -1,7 +1,7 @@
 /*
  * Author: Dylan Bowman
  * 
- * CIAgent class - implements Agent
+ * CIAgent class - implements InterestBearingAgent
  * CI agent is a specific type of agent that plays the market according to the history
  * of prices + a specific algorithm based off the Chiarella and Iori agent-based model.
  * The algorithm uses rbar, rhat, and phat variables below.  Please see my thesis for a
@@ -10,7 +10,7 @@
 
 import java.util.Random;
 
-public class CIAgent implements Agent {
+public class CIAgent implements InterestBearingAgent {
 
 	private double				money;
 	private int					shares;
@@ -19,6 +19,7 @@ public class CIAgent implements Agent {
 	private int					pid;
 	private DAS					das;  // reference to the simulation
 	private int					tradesCompleted;
+	private InterestAccrual.Account	account	= new InterestAccrual.Account();  // paid lazily
 
 	private double				fundval; // beginning fundamental price of the commodity
 	private int					lifetime; // rounds until orders placed by this agent expire
@@ -34,6 +35,14 @@ public class CIAgent implements Agent {
 	public CIAgent(double startingMoney, int startingShares, LimitOrderBook lob,
 						int pid, DAS das, double val, int tau, double g1, double g2,
 						double n, int Li, double ki, double delta) {
+		this(startingMoney, startingShares, lob, pid, das, val, tau, g1, g2, n,
+				Li, ki, delta, new SimRandom());
+	}
+
+	// same as above, but draws its noise from the given random number generator
+	public CIAgent(double startingMoney, int startingShares, LimitOrderBook lob,
+						int pid, DAS das, double val, int tau, double g1, double g2,
+						double n, int Li, double ki, double delta, Random random) {
 		this.money = startingMoney;
 		this.shares = startingShares;
 		this.type = 3;
@@ -51,7 +60,7 @@ public class CIAgent implements Agent {
 		this.ki = ki;
 		this.tickSize = delta;
 
-		this.random = new Random();
+		this.random = random;
 	}
 	
 	// compare the two agent IDs for sorting purposes, returns 0 if equal
@@ -66,11 +75,13 @@ public class CIAgent implements Agent {
 
 	// get current money level
 	public double getMoney() {
+		settle();
 		return money;
 	}
 
 	// set current money level
 	public boolean setMoney(double newMoney) {
+		settle();
 		if (newMoney < 0) return false;
 		money = newMoney;
 		return true;
@@ -78,11 +89,13 @@ public class CIAgent implements Agent {
 
 	// get current number of shares
 	public int getShares() {
+		settle();
 		return shares;
 	}
 
 	// set current number of shares
 	public boolean setShares(int newShares) {
+		settle();
 		if (newShares < 0) return false;
 		shares = newShares;
 		return true;
@@ -120,27 +133,19 @@ public class CIAgent implements Agent {
 		double e = random.nextGaussian() * 0.1;
 		// double realfund = (round > 200) ? fund : 0.0;
 		double realfund = fund;
-		double rhat = (realfund * ((fundval - p) / p)) + (chart * rbar) + (n * e);
-
-		// calculate future price expected, phat
+		// calculate future price expected, phat, from rhat
 		double realtau = (double) lifetime / 100.0;
-		double phat = p * Math.exp(rhat * realtau);
+		double phat = CIPricingKernel.expectedPrice(p, fundval, realtau,
+				realfund, chart, n, rbar, e);
 
-		double price = 0.0;
+		// calculate bid price
+		double price = CIPricingKernel.quotePrice(phat, p, ki, tickSize);
 		boolean success = true;
 		// price is expected to increase
 		if (phat >= p) {
-			// calculate bid price
-			price = phat * (1 - ki);
-			price = price - (price % tickSize)
-					+ ((price % tickSize < (tickSize / 2)) ? 0.0 : tickSize);
 			// submit buy order
 			success = lob.submitLimitBuyOrder(1, price, round + lifetime, this);
 		} else {
-			// calculate bid price
-			price = phat * (1 + ki);
-			price = price - (price % tickSize)
-					+ ((price % tickSize < (tickSize / 2)) ? 0.0 : tickSize);
 			// submit sell order
 			success = lob.submitLimitSellOrder(1, price, round + lifetime, this);
 		}
@@ -172,8 +177,19 @@ public class CIAgent implements Agent {
 		return success;
 	}
 
+	// have interest and dividends paid through the given accrual from now on
+	public void setInterestAccrual(InterestAccrual accrual) {
+		money = account.setAccrual(accrual, money, shares);
+	}
+
+	// catch up on the interest and dividends paid since this agent last settled
+	private void settle() {
+		money = account.settle(money, shares);
+	}
+
 	// print the final data for this agent
 	public void printFinalData(double finalPrice) {
+		settle();
 		System.out.printf("%3d, %2d, %8.2f, %5d, %8.2f", pid, type, money,
 				shares, money + (shares * finalPrice));
 		System.out.println();
@@ -0,0 +1,132 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * CI Pricing Kernel
+ * 
+ * The pricing rule of the CI agents (see CIAgent) on primitive values, for one agent or for
+ * a whole batch of agents quoting against the same price.  The batch version works in
+ * separate passes over the arrays (the weighted return, the expected price, the quote,
+ * the tick rounding) with no branches in the arithmetic passes, so the JIT can unroll and
+ * vectorize them; the exponential and the remainders stay scalar.  Both versions do the
+ * same operations in the same order, so a batch gives exactly the prices of one agent at
+ * a time.  The batch is plain Java on primitive arrays (the build targets Java 1.6, so
+ * there is no Vector API to ask for SIMD lanes directly).
+ * 
+ * The price a CI agent quotes against is the last round's, so every CI agent arriving in
+ * the same round prices off the same p; EventDrivenSimulation quotes those arrivals as
+ * one batch (through AgentPopulation.quoteCI).
+ */
+
+public class CIPricingKernel {
+
+	// the price an agent expects after its order's lifetime, given its weights, the
+	// average spot return rbar and its noise draw e
+	public static double expectedPrice(double p, double fundval, double realtau,
+			double fund, double chart, double noise, double rbar, double e) {
+		double rhat = (fund * ((fundval - p) / p)) + (chart * rbar) + (noise * e);
+		return p * Math.exp(rhat * realtau);
+	}
+
+	// the limit price quoted for an expected price: below it for a buy (the price is
+	// expected to rise), above it for a sell, rounded to the nearest tick
+	public static double quotePrice(double phat, double p, double ki,
+			double tickSize) {
+		double price = (phat >= p) ? phat * (1 - ki) : phat * (1 + ki);
+		return roundToTick(price, tickSize);
+	}
+
+	// round a price to the nearest multiple of the tick size
+	public static double roundToTick(double price, double tickSize) {
+		double r = price % tickSize;
+		return price - r + ((r < (tickSize / 2)) ? 0.0 : tickSize);
+	}
+
+	// expected prices of the n agents whose weights start at from into phat[0..n-1],
+	// with noise draws e[0..n-1]
+	public static void expectedPrices(double p, double fundval, double realtau,
+			double[] fund, double[] chart, double[] noise, int from, double rbar,
+			double[] e, double[] phat, int n) {
+		double gap = (fundval - p) / p;
+		// weighted return (vectorizable)
+		for (int i = 0; i < n; i++) {
+			int a = from + i;
+			phat[i] = ((fund[a] * gap) + (chart[a] * rbar) + (noise[a] * e[i]))
+					* realtau;
+		}
+		for (int i = 0; i < n; i++) {
+			phat[i] = p * Math.exp(phat[i]);
+		}
+	}
+
+	// limit prices for the expected prices phat[0..n-1] of the agents whose ki start at
+	// from into price, and whether each is a buy
+	public static void quotePrices(double[] phat, double p, double[] ki,
+			int from, double tickSize, double[] price, boolean[] buy, int n) {
+		// the side and unrounded quote (vectorizable as selects)
+		for (int i = 0; i < n; i++) {
+			boolean b = phat[i] >= p;
+			buy[i] = b;
+			double k = ki[from + i];
+			price[i] = phat[i] * (b ? 1 - k : 1 + k);
+		}
+		double half = tickSize / 2;
+		for (int i = 0; i < n; i++) {
+			double r = price[i] % tickSize;
+			price[i] = price[i] - r + ((r < half) ? 0.0 : tickSize);
+		}
+	}
+
+	// check the batch against one agent at a time and time both:
+	// CIPricingKernel [agents] [batches]
+	public static void main(String[] args) {
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		int batches = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		SimRandom random = new SimRandom(1);
+		double[] fund = new double[n], chart = new double[n], noise = new double[n];
+		double[] ki = new double[n], e = new double[n];
+		for (int i = 0; i < n; i++) {
+			fund[i] = Math.abs(random.nextGaussian() * 0.1);
+			chart[i] = random.nextGaussian() * 0.14;
+			noise[i] = random.nextGaussian() * 0.3;
+			ki[i] = random.nextDouble() * 0.5;
+		}
+		double[] phat = new double[n], price = new double[n];
+		boolean[] buy = new boolean[n];
+		double fundval = 1000.0, realtau = 2.0, delta = 0.01;
+
+		long scalar = 0, batch = 0;
+		double check = 0;
+		for (int b = 0; b < batches; b++) {
+			double p = 950 + random.nextDouble() * 100;
+			for (int i = 0; i < n; i++) {
+				e[i] = random.nextGaussian() * 0.1;
+			}
+
+			long t = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				double ph = expectedPrice(p, fundval, realtau, fund[i], chart[i],
+						noise[i], 0.0, e[i]);
+				check += quotePrice(ph, p, ki[i], delta);
+			}
+			scalar += System.nanoTime() - t;
+
+			t = System.nanoTime();
+			expectedPrices(p, fundval, realtau, fund, chart, noise, 0, 0.0, e,
+					phat, n);
+			quotePrices(phat, p, ki, 0, delta, price, buy, n);
+			batch += System.nanoTime() - t;
+
+			for (int i = 0; i < n; i++) {
+				double ph = expectedPrice(p, fundval, realtau, fund[i], chart[i],
+						noise[i], 0.0, e[i]);
+				if (price[i] != quotePrice(ph, p, ki[i], delta)
+						|| buy[i] != (ph >= p)) throw new RuntimeException(
+						"batch and scalar prices differ for agent " + i);
+			}
+		}
+		System.out.printf("%d agents: scalar %.1f ns/agent, batch %.1f ns/agent (%s)",
+				n, (double) scalar / batches / n, (double) batch / batches / n,
+				check != 0 ? "prices match" : "");
+		System.out.println();
+	}
+}
@@ -10,6 +10,7 @@
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Random;
 
 public class CISimulation implements DAS {
@@ -43,10 +44,37 @@ public class CISimulation implements DAS {
 	private int						lmax; // max # of rounds looked back on for history by an agent
 	private double					kmax; // max percentage of price expected to be bid
 
+	private EngineProfiler		profiler; // optional phase timings, null when off
+	private ArrayList<RoundListener>	roundListeners; // called at the end of every round
+	private InterestAccrual		accrual; // pays interest and dividends lazily to all agents
+
+	private boolean				geometricSkip; // jump over idle rounds instead of drawing each one
+	private int						idleRounds; // idle rounds before the next active one, -1 to draw
+
 	public CISimulation(int numRounds, int numAgents, boolean interestOn,
 								int tau, double delta, double lambda, double pf,
 								double std1, double std2, double n0, int lmax,
 								double kmax) {
+		this(numRounds, numAgents, interestOn, tau, delta, lambda, pf, std1, std2,
+				n0, lmax, kmax, new SimRandom());
+	}
+
+	// same as above, but the agents' parameters, the agents and the choice of agent each
+	// round are all seeded from random, so a seeded random gives a reproducible run
+	public CISimulation(int numRounds, int numAgents, boolean interestOn,
+								int tau, double delta, double lambda, double pf,
+								double std1, double std2, double n0, int lmax,
+								double kmax, Random random) {
+		this(numRounds, numAgents, interestOn, tau, delta, lambda, pf, std1, std2,
+				n0, lmax, kmax, random, false);
+	}
+
+	// same as above; if compact the agents are stored as an AgentPopulation (columns of
+	// primitive arrays) instead of one object each, for very large populations
+	public CISimulation(int numRounds, int numAgents, boolean interestOn,
+								int tau, double delta, double lambda, double pf,
+								double std1, double std2, double n0, int lmax,
+								double kmax, Random random, boolean compact) {
 		this.tau = tau;
 		this.delta = delta;
 		this.std1 = std1;
@@ -69,10 +97,11 @@ public class CISimulation implements DAS {
 		this.lambda = lambda;
 		this.pf = pf;
 
-		this.random = new Random();
-		this.at = new AutomaticTraders(numAgents);
+		this.random = random;
+		Random pick = SimRandom.split(random);
 		this.lob = new LimitOrderBook(true);
 		this.priceHistory = new ArrayList<Double>();
+		this.roundListeners = new ArrayList<RoundListener>();
 
 		double startingMoney = 1000.0;
 		int startingShares = 20;
@@ -80,6 +109,10 @@ public class CISimulation implements DAS {
 		this.ua = new UserAgent(startingMoney, startingShares, lob, 0);
 
 		// initialize CIAgents
+		AgentPopulation population = null;
+		if (compact) population = new AgentPopulation(numAgents, lob, this,
+				SimRandom.split(random));
+		else this.at = new AutomaticTraders(numAgents, pick);
 		for (int i = 1; i <= numAgents; i++) {
 			double g1 = Math.abs(random.nextGaussian() * std1);
 			double g2 = random.nextGaussian() * std2;
@@ -87,10 +120,21 @@ public class CISimulation implements DAS {
 			int li = random.nextInt(lmax) + 1;
 			double ki = random.nextDouble() * kmax;
 
+			if (compact) {
+				population.addCI(startingMoney, startingShares, i, pf, tau, g1, g2,
+						n, li, ki, delta);
+				continue;
+			}
 			Agent a = new CIAgent(startingMoney, startingShares, lob, i, this, pf,
-					tau, g1, g2, n, li, ki, delta);
+					tau, g1, g2, n, li, ki, delta, SimRandom.split(random));
 			at.addAgent(a);
 		}
+		if (compact) this.at = new AutomaticTraders(population, pick);
+
+		// pay interest and dividends lazily, as each agent's money is needed
+		this.accrual = new InterestAccrual();
+		at.setInterestAccrual(accrual);
+		((UserAgent) ua).setInterestAccrual(accrual);
 	}
 
 	// print # of user trades completed
@@ -136,6 +180,11 @@ public class CISimulation implements DAS {
 		return lob;
 	}
 
+	// get the prices and book sizes of the market
+	public MarketQuotes getQuotes() {
+		return lob;
+	}
+
 	// get the total number of rounds for this simulation
 	public int getNumRounds() {
 		return numRounds;
@@ -146,24 +195,51 @@ public class CISimulation implements DAS {
 		return currentRound;
 	}
 
+	// draw the gap to each active round from a geometric distribution and process the
+	// idle rounds in between in bulk, so a run costs time in proportion to its orders
+	// rather than its rounds; each call of nextBid then processes the idle rounds and the
+	// active round after them (the same process in distribution, not the same sample path)
+	public void setGeometricSkip(boolean on) {
+		this.geometricSkip = on;
+		this.idleRounds = -1;
+	}
+
 	// prompt a random agent to make the next bid
 	public boolean nextBid() {
 		if (isDone()) return false;
+		long start = 0;
+		if (profiler != null) start = System.nanoTime();
+		long t = start;
+
+		// jump over the idle rounds before the next active one
+		if (geometricSkip) {
+			if (idleRounds < 0) idleRounds = nextGap();
+			int idle = Math.min(idleRounds, numRounds - currentRound);
+			processIdleRounds(idle);
+			idleRounds -= idle;
+			if (isDone()) return true;
+		}
 		
 		// process interest and dividend payments if enabled
 		if (interestOn && (currentRound % interestPeriod) == 0
 				&& currentRound > 1) {
-			at.applyInterestRate(interestRate, dividend);
-			ua.setMoney(ua.getMoney() * interestRate);
-			ua.setMoney(ua.getMoney() + ua.getShares() * dividend);
+			accrual.pay(interestRate, dividend);
+			fireInterestApplied(currentRound);
 		}
+		if (profiler != null) t = profiler.lap(EngineProfiler.INTEREST, t);
 
 		// have a random agent submit a bid
 		boolean success;
-		double r1 = random.nextDouble();
-		if (r1 < lambda) {
-			success = at.randomAgent().submitOrder(currentRound);
-		} else success = true;
+		if (geometricSkip) {
+			success = at.submitRandomOrder(currentRound);
+			idleRounds = -1;
+		} else {
+			double r1 = random.nextDouble();
+			if (r1 < lambda) {
+				success = at.submitRandomOrder(currentRound);
+			} else success = true;
+		}
+		if (profiler != null) t = profiler.lap(EngineProfiler.AGENT, t);
 
 		// add the transaction price (or midpoint price if no transaction) to the price history
 		if (priceHistory.size() == 0) priceHistory.add(pf);
@@ -174,34 +250,103 @@ public class CISimulation implements DAS {
 		} else { // if first couple rounds, just get the value from the last round
 			priceHistory.add(priceHistory.get(currentRound - 1));
 		}
+		if (profiler != null) t = profiler.lap(EngineProfiler.HISTORY, t);
 		
 		// calculate averages
 		if (lob.getMarketSpread() > 0) averageSpread += lob.getMarketSpread();
 		if (lob.getBuyBookSize() > 0) averageBids += lob.getBuyBookSize();
 		if (lob.getSellBookSize() > 0) averageAsks += lob.getSellBookSize();
+		if (profiler != null) t = profiler.lap(EngineProfiler.STATISTICS, t);
 		
 		// clear the expired bids in the lob
 		lob.clearExpiredBids(currentRound++);
+		if (profiler != null) {
+			profiler.lap(EngineProfiler.EXPIRY, t);
+			profiler.record(EngineProfiler.ROUND, System.nanoTime() - start);
+		}
+		fireRoundCompleted(currentRound - 1);
 		
 		return success;
 	}
 	
+	// the number of idle rounds before the next active one, where each round is active
+	// with probability lambda
+	private int nextGap() {
+		if (lambda >= 1) return 0;
+		if (lambda <= 0) return numRounds;
+		double gap = Math.floor(Math.log(1.0 - random.nextDouble())
+				/ Math.log(1.0 - lambda));
+		return (gap >= numRounds) ? numRounds : (int) gap;
+	}
+
+	// process rounds in which no agent acts; the book only changes when orders expire, so
+	// the rounds are taken in stretches between expiries (and interest payments) with one
+	// history fill and one update of the averages each
+	private void processIdleRounds(int n) {
+		int end = currentRound + n;
+		int period = (int) interestPeriod;
+		while (currentRound < end) {
+			if (interestOn && (currentRound % interestPeriod) == 0
+					&& currentRound > 1) {
+				accrual.pay(interestRate, dividend);
+				fireInterestApplied(currentRound);
+			}
+
+			// the last round of the stretch: before the next expiry or interest payment
+			int last = Math.max(currentRound, Math.min(end - 1, lob
+					.getNextExpiration()));
+			if (interestOn) {
+				int nextInterest = (currentRound / period + 1) * period;
+				if (nextInterest <= last) last = nextInterest - 1;
+			}
+			int length = last - currentRound + 1;
+
+			// the same price every round of the stretch
+			Double price;
+			if (priceHistory.size() == 0) price = pf;
+			else if (lob.transactionOccured()) price = lob.getLastTransactionPrice();
+			else if (lob.getMidpointPrice() > 0) price = lob.getMidpointPrice();
+			else price = priceHistory.get(currentRound - 1);
+			priceHistory.addAll(Collections.nCopies(length, price));
+
+			if (lob.getMarketSpread() > 0) averageSpread += length
+					* lob.getMarketSpread();
+			if (lob.getBuyBookSize() > 0) averageBids += length
+					* lob.getBuyBookSize();
+			if (lob.getSellBookSize() > 0) averageAsks += length
+					* lob.getSellBookSize();
+
+			// listeners still hear about every round
+			while (currentRound < last) {
+				currentRound++;
+				fireRoundCompleted(currentRound - 1);
+			}
+			lob.clearExpiredBids(currentRound++);
+			fireRoundCompleted(currentRound - 1);
+		}
+	}
+
 	// user wants to submit an order, which functions as its own round in the sim
 	public boolean submitUserOrder(boolean isLimit, boolean isSell, int size,
 			double price, int expiration) {
 		if (isDone()) return false;
+		long start = 0;
+		if (profiler != null) start = System.nanoTime();
+		long t = start;
 		
 		// process interest and dividend payments if turned on
 		if (interestOn && (currentRound % interestPeriod) == 0
 				&& currentRound > 1) {
-			at.applyInterestRate(interestRate, dividend);
-			ua.setMoney(ua.getMoney() * interestRate);
-			ua.setMoney(ua.getMoney() + ua.getShares() * dividend);
+			accrual.pay(interestRate, dividend);
+			fireInterestApplied(currentRound);
 		}
 
+		if (profiler != null) t = profiler.lap(EngineProfiler.INTEREST, t);
+
 		// submit the users order
 		boolean success = ua.submitOrder(isLimit, isSell, size, price,
 				currentRound + expiration);
+		if (profiler != null) t = profiler.lap(EngineProfiler.AGENT, t);
 		
 		// add the transaction price (or midpoint price if no transaction) to the price history
 		if (priceHistory.size() == 0) priceHistory.add(pf);
@@ -212,14 +357,21 @@ public class CISimulation implements DAS {
 		else { // if first couple rounds, just get the value from the last round
 			priceHistory.add(priceHistory.get(currentRound - 1));
 		}
+		if (profiler != null) t = profiler.lap(EngineProfiler.HISTORY, t);
 		
 		// calculate averages
 		if (lob.getMarketSpread() > 0) averageSpread += lob.getMarketSpread();
 		if (lob.getBuyBookSize() > 0) averageBids += lob.getBuyBookSize();
 		if (lob.getSellBookSize() > 0) averageAsks += lob.getSellBookSize();
+		if (profiler != null) t = profiler.lap(EngineProfiler.STATISTICS, t);
 		
 		// clear expired bids from the lob
 		lob.clearExpiredBids(currentRound++);
+		if (profiler != null) {
+			profiler.lap(EngineProfiler.EXPIRY, t);
+			profiler.record(EngineProfiler.ROUND, System.nanoTime() - start);
+		}
+		fireRoundCompleted(currentRound - 1);
 		
 		return success;
 	}
@@ -229,6 +381,32 @@ public class CISimulation implements DAS {
 		return currentRound == numRounds;
 	}
 
+	// set the profiler that times the phases of each round (null turns it off)
+	public void setProfiler(EngineProfiler profiler) {
+		this.profiler = profiler;
+		lob.setProfiler(profiler);
+	}
+
+	// add a listener to be called at the end of every round
+	public void addRoundListener(RoundListener listener) {
+		roundListeners.add(listener);
+	}
+
+	// let the round listeners know interest and dividends were paid out
+	private void fireInterestApplied(int round) {
+		for (int i = 0; i < roundListeners.size(); i++) {
+			roundListeners.get(i).interestApplied(this, round, interestRate,
+					dividend);
+		}
+	}
+
+	// let the round listeners know a round has been processed
+	private void fireRoundCompleted(int round) {
+		for (int i = 0; i < roundListeners.size(); i++) {
+			roundListeners.get(i).roundCompleted(this, round);
+		}
+	}
+
 	// get the current level of the user's money
 	public double getUserMoney() {
 		return ua.getMoney();
@@ -244,6 +422,21 @@ public class CISimulation implements DAS {
 		return ua.getShares();
 	}
 
+	// get the average spread over the rounds processed so far
+	public double getAverageSpread() {
+		return (currentRound == 0) ? 0.0 : averageSpread / currentRound;
+	}
+
+	// get the average size of the buy book over the rounds processed so far
+	public double getAverageBids() {
+		return (currentRound == 0) ? 0.0 : averageBids / currentRound;
+	}
+
+	// get the average size of the sell book over the rounds processed so far
+	public double getAverageAsks() {
+		return (currentRound == 0) ? 0.0 : averageAsks / currentRound;
+	}
+
 	// print data on the simulation
 	public void printData() {
 		System.out.printf("%6.4f, %6.4f, %6d, %6d", lob.getMidpointPrice(),
@@ -314,14 +507,49 @@ public class CISimulation implements DAS {
 		//}
 		//cis.printPriceHistory();
 		
+		// run with -Ddas.profile=true to get a latency report of the engine at the end
+		EngineProfiler profiler = null;
+		if (Boolean.getBoolean("das.profile")) profiler = new EngineProfiler();
+
+		// run with -Ddas.jmx=true to watch the sweep live through JMX
+		SimulationMetrics metrics = null;
+		if (Boolean.getBoolean("das.jmx")) metrics = MetricsRegistry
+				.register("CISimulation");
+
+		// run with -Ddas.events=true to record events and print a rolling summary
+		EventRecorder recorder = null;
+		EventStreamMonitor monitor = null;
+		if (Boolean.getBoolean("das.events")) {
+			recorder = new EventRecorder();
+			monitor = new EventStreamMonitor(recorder);
+			monitor.start();
+		}
+
+		// run with -Ddas.ledger=true to print the trading ledger of every run
+		boolean ledger = Boolean.getBoolean("das.ledger");
+
 		for (double i = 0.1; i <= 100; i += 0.1) {
 			cis = new CISimulation(numRounds, numAgents, interestOn,
 					tau, i, lambda, pf, std1, std2, n0, lmax, kmax);
+			cis.setProfiler(profiler);
+			if (metrics != null) metrics.attach(cis);
+			if (recorder != null) {
+				if (profiler != null) recorder.attach(cis, profiler);
+				else recorder.attach(cis);
+			}
+			TradingLedger tl = null;
+			if (ledger) {
+				tl = new TradingLedger();
+				tl.attach(cis);
+			}
 			while (!cis.isDone()) {
 				cis.nextBid();
 			}
 			cis.printAverageSpread(2);
+			if (tl != null) tl.printTypeSummary();
 		}
+		if (monitor != null) monitor.stop();
+		if (profiler != null) profiler.printReport();
 		
 	}
 
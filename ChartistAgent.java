@@ -1,7 +1,7 @@
 /*
  * Author: Dylan Bowman
  * 
- * ChartistAgent class - implements Agent
+ * ChartistAgent class - implements InterestBearingAgent
  * Chartist agent is a specific type of agent that plays the market according to the history
  * of prices.  It either attempts to follow the trend of the prices in its bidding tendencies
  * or attempts to act contrarian to the history of prices. Please see my thesis for a more in depth 
@@ -10,7 +10,7 @@
 
 import java.util.Random;
 
-public class ChartistAgent implements Agent {
+public class ChartistAgent implements InterestBearingAgent {
 
 	private double				money;
 	private int					shares;
@@ -20,6 +20,7 @@ public class ChartistAgent implements Agent {
 	private DAS					das;  // reference to the simulation
 	private int					history;  // how far back the Chartist agent looks
 	private int					tradesCompleted;
+	private InterestAccrual.Account	account	= new InterestAccrual.Account();  // paid lazily
 	private boolean			chase;  // true = chasing chartist strategy, false = contrarian
 
 	private double				lp;  // probability of limit order (prob. of market order is 1 - lp)
@@ -34,6 +35,15 @@ public class ChartistAgent implements Agent {
 								LimitOrderBook lob, int pid, double limitOrderProb,
 								double sellProb, double interval, int exp,
 								DASimulation das, int history) {
+		this(startingMoney, startingShares, lob, pid, limitOrderProb, sellProb,
+				interval, exp, das, history, new SimRandom());
+	}
+
+	// same as above, but draws its decisions from the given random number generator
+	public ChartistAgent(double startingMoney, int startingShares,
+								LimitOrderBook lob, int pid, double limitOrderProb,
+								double sellProb, double interval, int exp,
+								DASimulation das, int history, Random random) {
 		this.money = startingMoney;
 		this.shares = startingShares;
 		this.type = 2;
@@ -48,7 +58,7 @@ public class ChartistAgent implements Agent {
 		this.sp = sellProb;
 		this.interval = interval;
 		this.exp = exp;
-		this.random = new Random();
+		this.random = random;
 		
 		this.fundPrice = 50;
 	}
@@ -65,11 +75,13 @@ public class ChartistAgent implements Agent {
 
 	// get current money level
 	public double getMoney() {
+		settle();
 		return money;
 	}
 
 	// set current money level
 	public boolean setMoney(double newMoney) {
+		settle();
 		if (newMoney < 0) return false;  // can't owe money in this simulation
 		money = newMoney;
 		return true;
@@ -77,11 +89,13 @@ public class ChartistAgent implements Agent {
 
 	// get number of current shares
 	public int getShares() {
+		settle();
 		return shares;
 	}
 
 	// set number of current shares
 	public boolean setShares(int newShares) {
+		settle();
 		if (newShares < 0) return false;
 		shares = newShares;
 		return true;
@@ -199,8 +213,19 @@ public class ChartistAgent implements Agent {
 		return success;
 	}
 
+	// have interest and dividends paid through the given accrual from now on
+	public void setInterestAccrual(InterestAccrual accrual) {
+		money = account.setAccrual(accrual, money, shares);
+	}
+
+	// catch up on the interest and dividends paid since this agent last settled
+	private void settle() {
+		money = account.settle(money, shares);
+	}
+
 	// print final data
 	public void printFinalData(double finalPrice) {
+		settle();
 		System.out.printf("%3d, %2d, %8.2f, %5d, %8.2f", pid, type, money,
 				shares, money + (shares * finalPrice));
 		System.out.println();
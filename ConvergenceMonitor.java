@@ -0,0 +1,199 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Convergence Monitor
+ * 
+ * Watches the spread, the sizes of the two books and the volatility (mean absolute log
+ * return of the midpoint price) of a running simulation, detects when the empty book
+ * warm-up has ended, and says when the estimates after it are stable enough to stop.
+ * 
+ * Each round's values are summed into batches.  The batch means are kept in a fixed number
+ * of slots; when they fill up neighbouring batches are merged and the batch size doubles,
+ * so memory stays constant and the batches get long enough to be close to independent.
+ * The burn-in is picked by MSER (the truncation point that minimises the standard error
+ * of the remaining batch means), and the run has converged once, after the burn-in, every
+ * statistic's confidence interval half width is within the tolerance of its mean.
+ */
+
+public class ConvergenceMonitor implements RoundListener {
+
+	public static final int			SPREAD			= 0;
+	public static final int			BIDS				= 1;
+	public static final int			ASKS				= 2;
+	public static final int			VOLATILITY		= 3;
+	public static final int			NUM_STATS		= 4;
+
+	private static final String[]	NAMES				= { "spread", "bids", "asks",
+			"volatility"										};
+
+	private static final int		MAX_BATCHES		= 128;
+	private static final int		MIN_BATCHES		= 20;  // needed after the burn-in
+	private static final double	CONFIDENCE		= 0.95;
+
+	private double						tolerance;		// relative half width to stop at
+	private int							batchSize;
+	private double[][]				batches;			// [stat][batch] sums of each batch
+	private int							numBatches;
+	private double[]					current;			// sums of the batch being filled
+	private int							inCurrent;		// rounds in the batch being filled
+	private double						lastMidpoint;
+	private int							burnIn;			// in batches
+	private boolean					converged;
+	private int							convergedRound;
+
+	// create a monitor that stops at the given relative half width, starting with
+	// batches of the given number of rounds
+	public ConvergenceMonitor(double tolerance, int batchSize) {
+		if (tolerance <= 0) throw new IllegalArgumentException(
+				"tolerance must be positive: " + tolerance);
+		if (batchSize < 1) throw new IllegalArgumentException(
+				"batch size must be positive: " + batchSize);
+		this.tolerance = tolerance;
+		this.batchSize = batchSize;
+		this.batches = new double[NUM_STATS][MAX_BATCHES];
+		this.numBatches = 0;
+		this.current = new double[NUM_STATS];
+		this.inCurrent = 0;
+		this.lastMidpoint = -1;
+		this.burnIn = 0;
+		this.converged = false;
+		this.convergedRound = -1;
+	}
+
+	// create a monitor with batches that start at 100 rounds
+	public ConvergenceMonitor(double tolerance) {
+		this(tolerance, 100);
+	}
+
+	// start watching a simulation
+	public void attach(MarketSimulation sim) {
+		sim.addRoundListener(this);
+	}
+
+	// get the name of a statistic
+	public static String getName(int stat) {
+		return NAMES[stat];
+	}
+
+	// have the estimates converged?
+	public boolean isConverged() {
+		return converged;
+	}
+
+	// get the round the estimates converged at, or -1
+	public int getConvergedRound() {
+		return convergedRound;
+	}
+
+	// get the number of rounds thrown away as warm-up
+	public int getBurnInRounds() {
+		return burnIn * batchSize;
+	}
+
+	// get the number of rounds the estimates are made from
+	public int getRoundsUsed() {
+		return (numBatches - burnIn) * batchSize;
+	}
+
+	// get the current length of a batch
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	// get the estimate of a statistic with the burn-in removed
+	public double getMean(int stat) {
+		if (numBatches - burnIn <= 0) return 0.0;
+		return summarize(stat).getMean();
+	}
+
+	// get the half width of the confidence interval of a statistic
+	public double getHalfWidth(int stat) {
+		if (numBatches - burnIn < 2) return Double.POSITIVE_INFINITY;
+		return summarize(stat).getHalfWidth(CONFIDENCE);
+	}
+
+	public void roundCompleted(MarketSimulation sim, int round) {
+		MarketQuotes lob = sim.getQuotes();
+		// the same per round values the simulations average
+		if (lob.getMarketSpread() > 0) current[SPREAD] += lob.getMarketSpread();
+		current[BIDS] += lob.getBuyBookSize();
+		current[ASKS] += lob.getSellBookSize();
+		double midpoint = lob.getMidpointPrice();
+		if (midpoint > 0) {
+			if (lastMidpoint > 0) current[VOLATILITY] += Math.abs(Math.log(midpoint
+					/ lastMidpoint));
+			lastMidpoint = midpoint;
+		}
+
+		if (++inCurrent < batchSize) return;
+		for (int s = 0; s < NUM_STATS; s++) {
+			batches[s][numBatches] = current[s];
+			current[s] = 0;
+		}
+		inCurrent = 0;
+		numBatches++;
+		if (numBatches == MAX_BATCHES) mergeBatches();
+		check(round);
+	}
+
+	public void interestApplied(MarketSimulation sim, int round, double interestRate,
+			double dividend) {
+	}
+
+	// merge neighbouring batches, doubling the batch size
+	private void mergeBatches() {
+		for (int s = 0; s < NUM_STATS; s++) {
+			for (int i = 0; i < numBatches / 2; i++) {
+				batches[s][i] = batches[s][2 * i] + batches[s][2 * i + 1];
+			}
+		}
+		numBatches /= 2;
+		batchSize *= 2;
+		// only called right after a batch was closed, so the batch in progress is still
+		// empty (inCurrent is 0) and simply fills up to the new size
+	}
+
+	// pick the burn-in and test every statistic against the tolerance
+	private void check(int round) {
+		burnIn = 0;
+		for (int s = 0; s < NUM_STATS; s++) {
+			burnIn = Math.max(burnIn, truncation(batches[s], numBatches));
+		}
+		if (converged || numBatches - burnIn < MIN_BATCHES) return;
+		for (int s = 0; s < NUM_STATS; s++) {
+			RunningStatistics rs = summarize(s);
+			if (rs.getHalfWidth(CONFIDENCE) > tolerance * Math.abs(rs.getMean())) return;
+		}
+		converged = true;
+		convergedRound = round;
+	}
+
+	// MSER: the d (at most half the batches) minimising the sum of squared deviations of
+	// the batches after d over (n - d)^2
+	private static int truncation(double[] x, int n) {
+		double sum = 0, sumSq = 0;
+		int best = n - 1;
+		double bestScore = Double.POSITIVE_INFINITY;
+		for (int d = n - 1; d >= 0; d--) {
+			sum += x[d];
+			sumSq += x[d] * x[d];
+			int m = n - d;
+			if (d > n / 2 || m < 2) continue;
+			double score = (sumSq - sum * sum / m) / ((double) m * m);
+			if (score <= bestScore) {
+				bestScore = score;
+				best = d;
+			}
+		}
+		return (n < 4) ? 0 : best;
+	}
+
+	// the batch means of a statistic after the burn-in
+	private RunningStatistics summarize(int stat) {
+		RunningStatistics rs = new RunningStatistics();
+		for (int i = burnIn; i < numBatches; i++) {
+			rs.add(batches[stat][i] / batchSize);
+		}
+		return rs;
+	}
+}
@@ -4,9 +4,10 @@
  * Interface for DAS
  * 
  * Allows for standards to be placed around the different types of Double Auction Simulations.
+ * The stepping, quotes and averages come from MarketSimulation.
  */
 
-public interface DAS {
+public interface DAS extends MarketSimulation {
 	// get the type of the simulation
 	int getType();
 
@@ -28,22 +29,10 @@ public interface DAS {
 	// get the limit book
 	LimitOrderBook getLOB();
 
-	// get the total number of rounds
-	int getNumRounds();
-
-	// get the current round
-	int getCurrentRound();
-
-	// process the next bid
-	boolean nextBid();
-
 	// process a user bid, which acts as its own round in the simulation
 	boolean submitUserOrder(boolean isLimit, boolean isSell, int size,
 			double price, int expiration);
 	
-	// is the simulation done?
-	boolean isDone();
-	
 	// get the current level of the user's money
 	double getUserMoney();
 	
@@ -59,9 +48,6 @@ public interface DAS {
 	// print final results of the simulation
 	void printResults();
 
-	// print the average spread with different options
-	void printAverageSpread(int i);
-	
 	// print the number of user trades
 	void printUserTrades();
 }
@@ -0,0 +1,313 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * DAS Runner
+ * 
+ * Headless command line runner for the DAS models, so experiments don't need a patched
+ * copy of a main method.  A run is described by a spec in properties form: "model" and the
+ * parameters of a SimulationConfig, plus "run." keys that say which seeds to run, what to
+ * sweep and where to write the results:
+ * 
+ *   run.seeds         seeds to run every point with, eg. "1-10,42" (overrides the below)
+ *   run.replications  runs per point with seeds derived from run.masterSeed (default 1)
+ *   run.masterSeed    seed every other seed is derived from (default random)
+ *   run.sweep.<name>  values of a parameter to sweep, "a,b,c" or "from:to:step"
+ *   run.threads       worker threads (default every core)
+ *   run.output        comma separated sinks: stdout, csv:<file>, jsonl:<file>
+ *   run.columns       columns to write (default the swept parameters, seed and results)
+ *   run.cache         ResultCache file to reuse the results of earlier runs
+ * 
+ * Usage: DASRunner <spec file | -> [name=value ...], where the name=value pairs override
+ * the spec.  Results stream to the sinks in order as they finish, and the total speed in
+ * rounds per second is reported at the end.  Nothing here touches Swing.
+ */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Future;
+
+public class DASRunner {
+
+	private static final String	PREFIX	= "run.";
+	private static final String	SWEEP		= "run.sweep.";
+
+	private Properties				spec;
+	private SimulationConfig		base;
+	private List<SimulationConfig>	configs;
+	private List<String>				columns;
+	private List<Sink>				sinks;
+	private int							threads;
+	private String						cacheFile;
+
+	public DASRunner(Properties spec) throws IOException {
+		this.spec = spec;
+
+		// everything but the runner's keys describes the simulation
+		Properties model = new Properties();
+		for (String name : spec.stringPropertyNames()) {
+			if (!name.startsWith(PREFIX)) model.setProperty(name, spec
+					.getProperty(name));
+		}
+		this.base = SimulationConfig.fromProperties(model);
+
+		ParameterGrid grid = new ParameterGrid(base);
+		if (spec.getProperty("run.masterSeed") != null) grid.setMasterSeed(Long
+				.parseLong(spec.getProperty("run.masterSeed").trim()));
+		for (String name : new TreeSet<String>(spec.stringPropertyNames())) {
+			if (name.startsWith(SWEEP)) addAxis(grid, name.substring(SWEEP
+					.length()), spec.getProperty(name));
+		}
+		this.configs = withSeeds(grid.getConfigs());
+
+		if (spec.getProperty("run.columns") != null) {
+			this.columns = split(spec.getProperty("run.columns"));
+		} else {
+			this.columns = new ArrayList<String>(grid.getAxes());
+			columns.add("seed");
+			columns.addAll(Arrays.asList(SweepResult.RESULT_COLUMNS));
+			columns.add("rate");
+		}
+
+		this.threads = Integer.parseInt(spec.getProperty("run.threads",
+				"" + Runtime.getRuntime().availableProcessors()).trim());
+		this.cacheFile = spec.getProperty("run.cache");
+		this.sinks = new ArrayList<Sink>();
+		for (String s : split(spec.getProperty("run.output", "stdout"))) {
+			sinks.add(openSink(s));
+		}
+	}
+
+	// get the configs of every run, in order
+	public List<SimulationConfig> getConfigs() {
+		return configs;
+	}
+
+	// run everything, streaming each result to the sinks once it and every result before
+	// it are done, and return the results
+	public List<SweepResult> run() throws IOException {
+		SweepRunner runner = new SweepRunner(threads);
+		ResultCache cache = null;
+		if (cacheFile != null) {
+			cache = new ResultCache(new File(cacheFile.trim()));
+			runner.setCache(cache);
+		}
+		long start = System.nanoTime();
+		List<Future<SweepResult>> futures = new ArrayList<Future<SweepResult>>();
+		for (SimulationConfig c : configs) {
+			futures.add(runner.submit(c));
+		}
+
+		for (Sink s : sinks) {
+			s.header(columns);
+		}
+		List<SweepResult> results = new ArrayList<SweepResult>();
+		long rounds = 0;
+		for (int i = 0; i < futures.size(); i++) {
+			SweepResult r = SweepRunner.await(futures.get(i));
+			results.add(r);
+			rounds += r.getRounds();
+			for (Sink s : sinks) {
+				s.row(r, columns);
+			}
+		}
+		runner.shutdown();
+		for (Sink s : sinks) {
+			s.close();
+		}
+		if (cache != null) cache.close();
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("# %d runs, %d rounds on %d threads in %.2f s: %.0f rounds/sec",
+				configs.size(), rounds, threads, seconds, rounds / seconds);
+		System.err.println();
+		if (cache != null) {
+			System.err.printf("# %d of %d runs from the cache", cache.getHits(),
+					configs.size());
+			System.err.println();
+		}
+		return results;
+	}
+
+	// give every point its seeds: the listed seeds, or replications derived from its own
+	private List<SimulationConfig> withSeeds(List<SimulationConfig> points) {
+		List<SimulationConfig> runs = new ArrayList<SimulationConfig>();
+		String seeds = spec.getProperty("run.seeds");
+		int replications = Integer.parseInt(spec.getProperty("run.replications",
+				"1").trim());
+		for (SimulationConfig point : points) {
+			if (seeds != null) {
+				for (String s : seeds(seeds)) {
+					runs.add(point.with("seed", s));
+				}
+			} else if (replications == 1) {
+				runs.add(point);
+			} else {
+				for (int j = 0; j < replications; j++) {
+					runs.add(point.with("seed", Long.toString(SimRandom.seedFor(point
+							.getSeed(), j))));
+				}
+			}
+		}
+		return runs;
+	}
+
+	// parse a list of seeds with ranges, eg. "1-10,42"
+	private static List<String> seeds(String list) {
+		List<String> seeds = new ArrayList<String>();
+		for (String s : split(list)) {
+			int dash = s.indexOf('-', 1);
+			if (dash < 0) {
+				seeds.add(Long.toString(Long.parseLong(s)));
+				continue;
+			}
+			long from = Long.parseLong(s.substring(0, dash).trim());
+			long to = Long.parseLong(s.substring(dash + 1).trim());
+			for (long seed = from; seed <= to; seed++) {
+				seeds.add(Long.toString(seed));
+			}
+		}
+		return seeds;
+	}
+
+	// add a swept parameter to the grid, "a,b,c" or "from:to:step"
+	private static void addAxis(ParameterGrid grid, String name, String values) {
+		String[] range = values.trim().split(":");
+		if (range.length != 3) {
+			grid.add(name, split(values).toArray(new String[0]));
+			return;
+		}
+		boolean whole = true;
+		for (String r : range) {
+			whole = whole && r.trim().matches("-?\\d+");
+		}
+		if (whole) grid.range(name, Integer.parseInt(range[0].trim()), Integer
+				.parseInt(range[1].trim()), Integer.parseInt(range[2].trim()));
+		else grid.range(name, Double.parseDouble(range[0]), Double
+				.parseDouble(range[1]), Double.parseDouble(range[2]));
+	}
+
+	// split a comma separated list, dropping blanks
+	private static List<String> split(String list) {
+		List<String> items = new ArrayList<String>();
+		for (String s : list.split(",")) {
+			if (s.trim().length() > 0) items.add(s.trim());
+		}
+		return items;
+	}
+
+	// open a sink by its spec: stdout, csv:<file> or jsonl:<file>
+	private static Sink openSink(String spec) throws IOException {
+		if (spec.equals("stdout")) return new TableSink(System.out, ", ", false);
+		int colon = spec.indexOf(':');
+		if (colon > 0) {
+			String kind = spec.substring(0, colon);
+			PrintStream out = new PrintStream(new BufferedOutputStream(
+					new FileOutputStream(spec.substring(colon + 1))), false, "UTF-8");
+			if (kind.equals("csv")) return new TableSink(out, ",", true);
+			if (kind.equals("jsonl")) return new JsonSink(out);
+			out.close();
+		}
+		throw new IllegalArgumentException("unknown output: " + spec);
+	}
+
+	// somewhere results are written to
+	private interface Sink {
+		void header(List<String> columns);
+
+		void row(SweepResult r, List<String> columns);
+
+		void close();
+	}
+
+	// a table with a header line, one line per result
+	private static class TableSink implements Sink {
+		private PrintStream	out;
+		private String			separator;
+		private boolean		closeAtEnd;
+
+		TableSink(PrintStream out, String separator, boolean closeAtEnd) {
+			this.out = out;
+			this.separator = separator;
+			this.closeAtEnd = closeAtEnd;
+		}
+
+		public void header(List<String> columns) {
+			line(columns);
+		}
+
+		public void row(SweepResult r, List<String> columns) {
+			List<String> values = new ArrayList<String>(columns.size());
+			for (String c : columns) {
+				values.add(r.get(c));
+			}
+			line(values);
+		}
+
+		private void line(List<String> values) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < values.size(); i++) {
+				if (i > 0) sb.append(separator);
+				sb.append(values.get(i));
+			}
+			out.println(sb);
+			out.flush();
+		}
+
+		public void close() {
+			if (closeAtEnd) out.close();
+		}
+	}
+
+	// one JSON object per result
+	private static class JsonSink implements Sink {
+		private PrintStream	out;
+
+		JsonSink(PrintStream out) {
+			this.out = out;
+		}
+
+		public void header(List<String> columns) {
+		}
+
+		public void row(SweepResult r, List<String> columns) {
+			StringBuilder sb = new StringBuilder("{");
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) sb.append(", ");
+				String v = r.get(columns.get(i));
+				sb.append('"').append(columns.get(i)).append("\": ");
+				if (v.equals("true") || v.equals("false")
+						|| v.matches("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?")) sb.append(v);
+				else sb.append('"').append(v.replace("\\", "\\\\").replace("\"",
+						"\\\"")).append('"');
+			}
+			out.println(sb.append('}'));
+			out.flush();
+		}
+
+		public void close() {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: DASRunner <spec file | -> [name=value ...]");
+			System.exit(2);
+		}
+		Properties spec = new Properties();
+		InputStream in = args[0].equals("-") ? System.in : new FileInputStream(
+				args[0]);
+		try {
+			spec.load(in);
+		} finally {
+			if (in != System.in) in.close();
+		}
+		for (int i = 1; i < args.length; i++) {
+			int eq = args[i].indexOf('=');
+			if (eq <= 0) throw new IllegalArgumentException("expected name=value: "
+					+ args[i]);
+			spec.setProperty(args[i].substring(0, eq).trim(), args[i]
+					.substring(eq + 1));
+		}
+		new DASRunner(spec).run();
+	}
+}
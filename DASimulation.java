@@ -35,9 +35,31 @@ public class DASimulation implements DAS {
 	private double					interval; // price interval (used to get price of new order)
 	private int						exp; // # of rounds til expiration
 
+	private EngineProfiler		profiler; // optional phase timings, null when off
+	private ArrayList<RoundListener>	roundListeners; // called at the end of every round
+	private InterestAccrual		accrual; // pays interest and dividends lazily to all agents
+
 	public DASimulation(int rounds, int zeroIntel, int chartists, boolean exp,
 								int history, double lp, double sp, double interval,
 								int ex) {
+		this(rounds, zeroIntel, chartists, exp, history, lp, sp, interval, ex,
+				new SimRandom());
+	}
+
+	// same as above, but every agent (and the choice of agent each round) is seeded from
+	// random, so a seeded random gives a reproducible run
+	public DASimulation(int rounds, int zeroIntel, int chartists, boolean exp,
+								int history, double lp, double sp, double interval,
+								int ex, Random random) {
+		this(rounds, zeroIntel, chartists, exp, history, lp, sp, interval, ex,
+				random, false);
+	}
+
+	// same as above; if compact the agents are stored as an AgentPopulation (columns of
+	// primitive arrays) instead of one object each, for very large populations
+	public DASimulation(int rounds, int zeroIntel, int chartists, boolean exp,
+								int history, double lp, double sp, double interval,
+								int ex, Random random, boolean compact) {
 		this.averageSpread = 0;
 		this.averageBids = 0;
 		this.averageAsks = 0;
@@ -57,9 +79,10 @@ public class DASimulation implements DAS {
 		this.interestPeriod = 1000; // hard coded interest period
 
 		this.currentRound = 0;
-		this.at = new AutomaticTraders(zeroIntel + chartists);
+		Random pick = SimRandom.split(random);
 		this.lob = new LimitOrderBook(expirationOn);
 		this.priceHistory = new ArrayList<Double>();
+		this.roundListeners = new ArrayList<RoundListener>();
 
 		double startingMoney = 1000.00;
 		int startingShares = 20;
@@ -67,21 +90,42 @@ public class DASimulation implements DAS {
 		this.ua = new UserAgent(startingMoney, startingShares, lob, 0);
 
 		// initialize automated agents
-		if (type == 0) {
-			for (int i = 1; i <= zeroIntel; i++) {
-				at.addAgent(new PracticeAgent(startingMoney, startingShares, lob,
-						i, lp, sp, interval, ex));
-			}
-		} else if (type == 1) {
+		if (compact) {
+			AgentPopulation population = new AgentPopulation(zeroIntel
+					+ chartists, lob, this, SimRandom.split(random));
 			for (int i = 1; i <= zeroIntel; i++) {
-				at.addAgent(new PracticeAgent(startingMoney, startingShares, lob,
-						i, lp, sp, interval, ex));
+				population.addZeroIntel(startingMoney, startingShares, i, lp, sp,
+						interval, ex);
 			}
 			for (int i = 1; i <= chartists; i++) {
-				at.addAgent(new ChartistAgent(startingMoney, startingShares, lob,
-						i, lp, sp, interval, ex, this, history));
+				population.addChartist(startingMoney, startingShares, i, lp, sp,
+						interval, ex, history);
+			}
+			this.at = new AutomaticTraders(population, pick);
+		} else {
+			this.at = new AutomaticTraders(zeroIntel + chartists, pick);
+			if (type == 0) {
+				for (int i = 1; i <= zeroIntel; i++) {
+					at.addAgent(new PracticeAgent(startingMoney, startingShares, lob,
+							i, lp, sp, interval, ex, SimRandom.split(random)));
+				}
+			} else if (type == 1) {
+				for (int i = 1; i <= zeroIntel; i++) {
+					at.addAgent(new PracticeAgent(startingMoney, startingShares, lob,
+							i, lp, sp, interval, ex, SimRandom.split(random)));
+				}
+				for (int i = 1; i <= chartists; i++) {
+					at.addAgent(new ChartistAgent(startingMoney, startingShares, lob,
+							i, lp, sp, interval, ex, this, history, SimRandom
+									.split(random)));
+				}
 			}
 		}
+
+		// pay interest and dividends lazily, as each agent's money is needed
+		this.accrual = new InterestAccrual();
+		at.setInterestAccrual(accrual);
+		((UserAgent) ua).setInterestAccrual(accrual);
 	}
 
 	// used for bare min
@@ -134,6 +178,11 @@ public class DASimulation implements DAS {
 		return lob;
 	}
 
+	// get the prices and book sizes of the market
+	public MarketQuotes getQuotes() {
+		return lob;
+	}
+
 	// get the total number of rounds
 	public int getNumRounds() {
 		return rounds;
@@ -147,55 +196,79 @@ public class DASimulation implements DAS {
 	// prompt a random agent to make a bid
 	public boolean nextBid() {
 		if (isDone()) return false;
+		long start = 0;
+		if (profiler != null) start = System.nanoTime();
+		long t = start;
 		
 		// process interest and dividend payments if enabled
 		if ((currentRound % interestPeriod) == 0 && currentRound > 1) {
-			at.applyInterestRate(interestRate, dividend);
-			ua.setMoney(ua.getMoney() * interestRate);
-			ua.setMoney(ua.getMoney() + ua.getShares() * dividend);
+			accrual.pay(interestRate, dividend);
+			fireInterestApplied(currentRound);
 		}
+		if (profiler != null) t = profiler.lap(EngineProfiler.INTEREST, t);
 		
 		// add the midpoint price to the price history
 		priceHistory.add(lob.getMidpointPrice());
+		if (profiler != null) t = profiler.lap(EngineProfiler.HISTORY, t);
 		
 		// calculate averages
 		if (lob.getMarketSpread() > 0) averageSpread += lob.getMarketSpread();
 		if (lob.getBuyBookSize() > 0) averageBids += lob.getBuyBookSize();
 		if (lob.getSellBookSize() > 0) averageAsks += lob.getSellBookSize();
+		if (profiler != null) t = profiler.lap(EngineProfiler.STATISTICS, t);
 		
 		// clear expired bids from the lob
 		lob.clearExpiredBids(currentRound);
+		if (profiler != null) t = profiler.lap(EngineProfiler.EXPIRY, t);
 		
 		// submit an order from a random agent
-		return at.randomAgent().submitOrder(currentRound++);
+		boolean success = at.submitRandomOrder(currentRound++);
+		if (profiler != null) {
+			profiler.lap(EngineProfiler.AGENT, t);
+			profiler.record(EngineProfiler.ROUND, System.nanoTime() - start);
+		}
+		fireRoundCompleted(currentRound - 1);
+		return success;
 	}
 
 	// submit a user order, which acts as a round in the simulation
 	public boolean submitUserOrder(boolean isLimit, boolean isSell, int size,
 			double price, int expiration) {
 		if (isDone()) return false;
+		long start = 0;
+		if (profiler != null) start = System.nanoTime();
+		long t = start;
 		
 		// process interest and dividend payments
 		if ((currentRound % interestPeriod) == 0 && currentRound > 1) {
-			at.applyInterestRate(interestRate, dividend);
-			ua.setMoney(ua.getMoney() * interestRate);
-			ua.setMoney(ua.getMoney() + ua.getShares() * dividend);
+			accrual.pay(interestRate, dividend);
+			fireInterestApplied(currentRound);
 		}
+		if (profiler != null) t = profiler.lap(EngineProfiler.INTEREST, t);
 		
 		// add the midpoint to the price history
 		priceHistory.add(lob.getMidpointPrice());
+		if (profiler != null) t = profiler.lap(EngineProfiler.HISTORY, t);
 		
 		// caclulate averages
 		if (lob.getMarketSpread() > 0) averageSpread += lob.getMarketSpread();
 		if (lob.getBuyBookSize() > 0) averageBids += lob.getBuyBookSize();
 		if (lob.getSellBookSize() > 0) averageAsks += lob.getSellBookSize();
+		if (profiler != null) t = profiler.lap(EngineProfiler.STATISTICS, t);
 		
 		// clear expired bids from the lob
 		lob.clearExpiredBids(currentRound);
+		if (profiler != null) t = profiler.lap(EngineProfiler.EXPIRY, t);
 		
 		// submit the users order
-		return ua.submitOrder(isLimit, isSell, size, price, currentRound
-				+ expiration);
+		boolean success = ua.submitOrder(isLimit, isSell, size, price,
+				currentRound + expiration);
+		if (profiler != null) {
+			profiler.lap(EngineProfiler.AGENT, t);
+			profiler.record(EngineProfiler.ROUND, System.nanoTime() - start);
+		}
+		fireRoundCompleted(currentRound);
+		return success;
 	}
 
 	// is the simulation done?
@@ -203,6 +276,32 @@ public class DASimulation implements DAS {
 		return (currentRound == rounds);
 	}
 
+	// set the profiler that times the phases of each round (null turns it off)
+	public void setProfiler(EngineProfiler profiler) {
+		this.profiler = profiler;
+		lob.setProfiler(profiler);
+	}
+
+	// add a listener to be called at the end of every round
+	public void addRoundListener(RoundListener listener) {
+		roundListeners.add(listener);
+	}
+
+	// let the round listeners know interest and dividends were paid out
+	private void fireInterestApplied(int round) {
+		for (int i = 0; i < roundListeners.size(); i++) {
+			roundListeners.get(i).interestApplied(this, round, interestRate,
+					dividend);
+		}
+	}
+
+	// let the round listeners know a round has been processed
+	private void fireRoundCompleted(int round) {
+		for (int i = 0; i < roundListeners.size(); i++) {
+			roundListeners.get(i).roundCompleted(this, round);
+		}
+	}
+
 	
 	// get the current level of the user's money
 	public double getUserMoney() {
@@ -219,6 +318,21 @@ public class DASimulation implements DAS {
 		return ua.getShares();
 	}
 
+	// get the average spread over the rounds processed so far
+	public double getAverageSpread() {
+		return (currentRound == 0) ? 0.0 : averageSpread / currentRound;
+	}
+
+	// get the average size of the buy book over the rounds processed so far
+	public double getAverageBids() {
+		return (currentRound == 0) ? 0.0 : averageBids / currentRound;
+	}
+
+	// get the average size of the sell book over the rounds processed so far
+	public double getAverageAsks() {
+		return (currentRound == 0) ? 0.0 : averageAsks / currentRound;
+	}
+
 	// print data on the simulation
 	public void printData() {
 		System.out.printf("%6.4f, %6.4f, %6d, %6d", lob.getMidpointPrice(),
@@ -281,14 +395,63 @@ public class DASimulation implements DAS {
 		 * while (!das.isDone()) { das.nextBid(); das.printData(); }
 		 */
 
+		// run with -Ddas.profile=true to get a latency report of the engine at the end
+		EngineProfiler profiler = null;
+		if (Boolean.getBoolean("das.profile")) profiler = new EngineProfiler();
+
+		// run with -Ddas.jmx=true to watch the sweep live through JMX
+		SimulationMetrics metrics = null;
+		if (Boolean.getBoolean("das.jmx")) metrics = MetricsRegistry
+				.register("DASimulation");
+
+		// run with -Ddas.events=true to record events and print a rolling summary
+		EventRecorder recorder = null;
+		EventStreamMonitor monitor = null;
+		if (Boolean.getBoolean("das.events")) {
+			recorder = new EventRecorder();
+			monitor = new EventStreamMonitor(recorder);
+			monitor.start();
+		}
+
+		// run with -Ddas.ledger=true to print the trading ledger of every run
+		boolean ledger = Boolean.getBoolean("das.ledger");
+
+		// run with -Ddas.fast=true to sweep on ZeroIntelligenceSimulation (it has no
+		// LimitOrderBook, so -Ddas.jmx, -Ddas.events and -Ddas.ledger are ignored)
+		boolean fast = Boolean.getBoolean("das.fast") && numChartists == 0;
+
 		for (int i = 1; i <= 1000; i += 1) {
+			if (fast) {
+				MarketSimulation zi = new ZeroIntelligenceSimulation(numRounds, numZero,
+						exp, lp, sp, interval, i);
+				zi.setProfiler(profiler);
+				while (!zi.isDone()) {
+					zi.nextBid();
+				}
+				zi.printAverageSpread(5);
+				continue;
+			}
 			das = new DASimulation(numRounds, numZero, numChartists, exp, history,
 					lp, sp, interval, i);
+			das.setProfiler(profiler);
+			if (metrics != null) metrics.attach(das);
+			if (recorder != null) {
+				if (profiler != null) recorder.attach(das, profiler);
+				else recorder.attach(das);
+			}
+			TradingLedger tl = null;
+			if (ledger) {
+				tl = new TradingLedger();
+				tl.attach(das);
+			}
 			while (!das.isDone()) {
 				das.nextBid();
 			}
 			das.printAverageSpread(5);
+			if (tl != null) tl.printTypeSummary();
 		}
+		if (monitor != null) monitor.stop();
+		if (profiler != null) profiler.printReport();
 
 		// System.out.println("End");
 		// System.out.println();
@@ -0,0 +1,237 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * DepthAggregator class - implements BookChangeListener, RoundListener
+ * Keeps the resting depth of a LimitOrderBook by price level over time, in fixed memory,
+ * for the depth heatmap.  Time is cut into a fixed number of columns and price into a fixed
+ * number of levels; each cell holds the depth of the level integrated over the rounds of
+ * the column (so divided by the width it is the average depth).
+ * 
+ * Nothing is rescanned: the book's change notifications keep the current depth of every
+ * level, and each level only adds its depth times the rounds since it last changed when it
+ * changes again or a column closes, so an order costs O(1) and a column O(levels).  When
+ * the run fills the columns, neighbouring pairs merge and columns become twice as wide;
+ * when a price falls outside the levels, neighbouring pairs merge and the range doubles
+ * towards it.  Memory stays at columns x levels per side however long the run is.
+ * 
+ * Like any listener it runs on the simulation thread; read it from that thread only.
+ */
+
+public class DepthAggregator implements BookChangeListener, RoundListener {
+
+	private int			columns;  // even
+	private int			levels;  // even
+	private int			width;  // rounds per column, a power of 2
+	private int			now;  // the round being processed
+	private int			current;  // the column of now
+	private double		low;  // price of the bottom of level 0
+	private double		tick;  // price range of a level
+	private boolean	ranged;  // has low been set from a price yet?
+
+	// per side: the depth integrated over time of each column (column major), the current
+	// depth of each level, and the round each level last changed
+	private double[]	bidGrid;
+	private double[]	askGrid;
+	private int[]		bidDepth;
+	private int[]		askDepth;
+	private int[]		bidSince;
+	private int[]		askSince;
+
+	public DepthAggregator(int columns, int levels, double tick) {
+		if (columns < 2 || levels < 2 || !(tick > 0)) throw new IllegalArgumentException(
+				"need at least 2 columns and levels and a positive tick");
+		this.columns = columns + (columns & 1);
+		this.levels = levels + (levels & 1);
+		this.width = 1;
+		this.tick = tick;
+		this.bidGrid = new double[this.columns * this.levels];
+		this.askGrid = new double[this.columns * this.levels];
+		this.bidDepth = new int[this.levels];
+		this.askDepth = new int[this.levels];
+		this.bidSince = new int[this.levels];
+		this.askSince = new int[this.levels];
+	}
+
+	// start following das's book, from the orders resting in it now (the only full scan)
+	public void attach(DAS das) {
+		LimitOrderBook lob = das.getLOB();
+		now = das.getCurrentRound();
+		current = 0;
+		while (now / width >= columns) {
+			width *= 2;
+		}
+		current = now / width;
+		for (int b = 0; b < levels; b++) {
+			bidSince[b] = now;
+			askSince[b] = now;
+		}
+		for (LimitOrder lo : lob.getBuyBookAsArray()) {
+			orderAdded(lo);
+		}
+		for (LimitOrder lo : lob.getSellBookAsArray()) {
+			orderAdded(lo);
+		}
+		lob.addChangeListener(this);
+		das.addRoundListener(this);
+	}
+
+	// BookChangeListener methods
+	public void orderAdded(LimitOrder order) {
+		change(order.getType(), order.getPrice(), order.getSize());
+	}
+
+	public void orderRemoved(LimitOrder order) {
+		change(order.getType(), order.getPrice(), -order.getSize());
+	}
+
+	// RoundListener methods
+	public void roundCompleted(MarketSimulation sim, int round) {
+		now = round + 1;
+		if (now / width != current) closeColumn();
+	}
+
+	public void interestApplied(MarketSimulation sim, int round, double interestRate,
+			double dividend) {
+	}
+
+	// the depth of a level changes by size from now on
+	private void change(boolean sell, double price, int size) {
+		int b = level(price);
+		int[] depth = sell ? askDepth : bidDepth;
+		int[] since = sell ? askSince : bidSince;
+		double[] grid = sell ? askGrid : bidGrid;
+		grid[current * levels + b] += (double) depth[b] * (now - since[b]);
+		since[b] = now;
+		depth[b] += size;
+	}
+
+	// get the level of price, widening the range until it fits
+	private int level(double price) {
+		if (!ranged) {
+			low = price - (levels / 2) * tick;
+			if (low < 0) low = 0;
+			ranged = true;
+		}
+		while (price < low) {
+			mergeLevels(false);
+		}
+		while (price >= low + levels * tick) {
+			mergeLevels(true);
+		}
+		return Math.min(levels - 1, (int) ((price - low) / tick));
+	}
+
+	// add the depth of every level up to round into the current column
+	private void flush(int round) {
+		for (int b = 0; b < levels; b++) {
+			bidGrid[current * levels + b] += (double) bidDepth[b]
+					* (round - bidSince[b]);
+			bidSince[b] = round;
+			askGrid[current * levels + b] += (double) askDepth[b]
+					* (round - askSince[b]);
+			askSince[b] = round;
+		}
+	}
+
+	// close the current column at its end and move to the column of now
+	private void closeColumn() {
+		flush((current + 1) * width);
+		while (now / width >= columns) {
+			mergeColumns();
+		}
+		current = now / width;
+		if (now > current * width) flush(now);  // a merge can land mid column
+	}
+
+	// merge neighbouring columns pairwise, doubling their width
+	private void mergeColumns() {
+		for (int c = 0; c < columns / 2; c++) {
+			for (int b = 0; b < levels; b++) {
+				bidGrid[c * levels + b] = bidGrid[2 * c * levels + b]
+						+ bidGrid[(2 * c + 1) * levels + b];
+				askGrid[c * levels + b] = askGrid[2 * c * levels + b]
+						+ askGrid[(2 * c + 1) * levels + b];
+			}
+		}
+		for (int i = (columns / 2) * levels; i < columns * levels; i++) {
+			bidGrid[i] = 0;
+			askGrid[i] = 0;
+		}
+		width *= 2;
+		current /= 2;
+	}
+
+	// merge neighbouring levels pairwise, doubling the range up (or down) from low
+	private void mergeLevels(boolean up) {
+		flush(now);
+		int offset = up ? 0 : levels / 2;
+		for (int c = 0; c <= current; c++) {
+			mergeLevels(bidGrid, c * levels, offset);
+			mergeLevels(askGrid, c * levels, offset);
+		}
+		mergeDepth(bidDepth, offset);
+		mergeDepth(askDepth, offset);
+		if (!up) low -= levels * tick;
+		tick *= 2;
+	}
+
+	private void mergeLevels(double[] grid, int from, int offset) {
+		double[] merged = new double[levels];
+		for (int k = 0; k < levels / 2; k++) {
+			merged[offset + k] = grid[from + 2 * k] + grid[from + 2 * k + 1];
+		}
+		System.arraycopy(merged, 0, grid, from, levels);
+	}
+
+	private void mergeDepth(int[] depth, int offset) {
+		int[] merged = new int[levels];
+		for (int k = 0; k < levels / 2; k++) {
+			merged[offset + k] = depth[2 * k] + depth[2 * k + 1];
+		}
+		System.arraycopy(merged, 0, depth, 0, levels);
+	}
+
+	// get the number of columns holding data (the last one still filling)
+	public int getColumnsUsed() {
+		return current + 1;
+	}
+
+	public int getLevels() {
+		return levels;
+	}
+
+	// get the rounds each column covers
+	public int getColumnWidth() {
+		return width;
+	}
+
+	// get the price at the bottom of level 0 and the top of the last level
+	public double getLowPrice() {
+		return low;
+	}
+
+	public double getHighPrice() {
+		return low + levels * tick;
+	}
+
+	// get the average depth of level b over column c of the buy (or sell) side
+	public double getDepth(boolean sell, int c, int b) {
+		double[] grid = sell ? askGrid : bidGrid;
+		int[] depth = sell ? askDepth : bidDepth;
+		int[] since = sell ? askSince : bidSince;
+		double sum = grid[c * levels + b];
+		int start = c * width;
+		int rounds = width;
+		if (c == current) {
+			// the column is still filling: count the depth held since the last change
+			sum += (double) depth[b] * (now - since[b]);
+			rounds = Math.max(1, now - start);
+		}
+		return sum / rounds;
+	}
+
+	// get the current depth of level b
+	public int getCurrentDepth(boolean sell, int b) {
+		return sell ? askDepth[b] : bidDepth[b];
+	}
+}
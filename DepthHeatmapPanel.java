@@ -0,0 +1,97 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Depth Heatmap Panel
+ * 
+ * A heatmap of the resting depth of the book by price (up) and time (across) for the
+ * animator, bids in green and asks in red, brighter where more orders rest.  The depth comes
+ * from a DepthAggregator, so drawing never looks at the book: sample() renders the
+ * aggregator's columns x levels cells into a small image, and paintComponent only scales the
+ * latest image to the panel.
+ * 
+ * As with PriceChartPanel, sample must run on the thread stepping the simulation and the
+ * image is handed to paintComponent through a volatile field.
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import javax.swing.*;
+
+@SuppressWarnings("serial")
+public class DepthHeatmapPanel extends JPanel {
+
+	private static final int		MARGIN	= 40;  // room for the price labels
+
+	private DepthAggregator			depth;
+	private volatile Frame			frame;
+
+	public DepthHeatmapPanel(int columns, int levels, double tick) {
+		this.depth = new DepthAggregator(columns, levels, tick);
+		this.frame = null;
+		setPreferredSize(new Dimension(400 + MARGIN, 300));
+		setBackground(Color.WHITE);
+	}
+
+	// start following das's book
+	public void attach(DAS das) {
+		depth.attach(das);
+	}
+
+	// render the aggregated depth into a new image and publish it
+	public void sample() {
+		int columns = depth.getColumnsUsed();
+		int levels = depth.getLevels();
+
+		// scale by the deepest cell, with a square root so thin levels still show
+		double max = 0;
+		for (int c = 0; c < columns; c++) {
+			for (int b = 0; b < levels; b++) {
+				max = Math.max(max, Math.max(depth.getDepth(false, c, b), depth
+						.getDepth(true, c, b)));
+			}
+		}
+		int[] rgb = new int[columns * levels];
+		for (int c = 0; c < columns; c++) {
+			for (int b = 0; b < levels; b++) {
+				int green = 0;
+				int red = 0;
+				if (max > 0) {
+					green = (int) (255 * Math.sqrt(depth.getDepth(false, c, b) / max));
+					red = (int) (255 * Math.sqrt(depth.getDepth(true, c, b) / max));
+				}
+				// highest prices at the top of the image
+				rgb[(levels - 1 - b) * columns + c] = (red << 16) | (green << 8);
+			}
+		}
+		BufferedImage image = new BufferedImage(columns, levels,
+				BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, columns, levels, rgb, 0, columns);
+		frame = new Frame(image, depth.getLowPrice(), depth.getHighPrice());
+	}
+
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		Frame f = frame;
+		int w = getWidth() - MARGIN - 5;
+		int h = getHeight() - 10;
+		if (f == null || w <= 0 || h <= 0) return;
+		g.drawImage(f.image, MARGIN, 5, w, h, null);
+		g.setColor(Color.BLACK);
+		g.drawString(String.format("%.2f", f.high), 2, 15);
+		g.drawString(String.format("%.2f", f.low), 2, 5 + h);
+		g.drawString("depth", MARGIN + w - 50, 17);
+	}
+
+	// one rendered heatmap, never changed once published
+	private static class Frame {
+		final BufferedImage	image;
+		final double			low;
+		final double			high;
+
+		Frame(BufferedImage image, double low, double high) {
+			this.image = image;
+			this.low = low;
+			this.high = high;
+		}
+	}
+}
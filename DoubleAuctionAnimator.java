@@ -26,6 +26,8 @@ public class DoubleAuctionAnimator extends JFrame {
 	private JPanel			bottomPanel;
 	private JList			buyList;
 	private JList			sellList;
+	private OrderBookListModel	buyModel;
+	private OrderBookListModel	sellModel;
 	private JList			orderChoice;
 	private JList			typeChoice;
 	private JScrollPane	buyScrollPane;
@@ -38,6 +40,8 @@ public class DoubleAuctionAnimator extends JFrame {
 	private JLabel			userShares;
 	private JLabel			userMoney;
 	private JLabel			roundNumber;
+	private PriceChartPanel	chart;
+	private DepthHeatmapPanel	heatmap;
 
 	// private static final Font font = new Font("SansSerif", Font.BOLD, 36);
 
@@ -51,6 +55,18 @@ public class DoubleAuctionAnimator extends JFrame {
 	private int				delayMax		= 2000;
 	private boolean		print;
 
+	// running the simulation on its own thread, with the GUI sampling it every frame
+	private JCheckBox		backgroundBox;
+	private BackgroundSimulation	background;
+	private Timer			frameTimer;
+	private int				frameDelay	= 1000 / 60;
+	private int				snapshotDepth	= 200;  // orders per list while in the background
+	private double			rateMin		= 10;  // rounds per second at the slow end
+	private double			rateMax		= 1e7;  // at the fast end it runs flat out
+
+	// as wide as LimitOrder.toString of any order the lists show
+	private static final String	CELL_PROTOTYPE	= "Pla: 100 Size: 1000 Price: 100.00 Exp: 10000";
+
 	public DoubleAuctionAnimator(DAS das, boolean print) {
 		this.das = das;
 		this.print = print;
@@ -59,12 +75,37 @@ public class DoubleAuctionAnimator extends JFrame {
 		setSize(150, 300);
 		setBackground(Color.CYAN); // not the best...
 
-		Dimension dim = new Dimension(600, 600);
+		Dimension dim = new Dimension(1050, 700);
 		setMinimumSize(dim);
 		setResizable(false);
 
 		createTopPanel();
 		createBottomPanel();
+		createChartPanel();
+	}
+
+	// price and spread chart and depth heatmap on the right of the GUI
+	private void createChartPanel() {
+		JPanel charts = new JPanel();
+		charts.setLayout(new GridLayout(2, 1));
+		getContentPane().add(charts, BorderLayout.EAST);
+
+		chart = new PriceChartPanel(1000 / frameDelay);
+		chart.attach(das);
+		charts.add(chart);
+
+		// 256 columns of time by 64 price levels, starting a quarter dollar apart
+		heatmap = new DepthHeatmapPanel(256, 64, 0.25);
+		heatmap.attach(das);
+		charts.add(heatmap);
+	}
+
+	// sample the chart and the heatmap and repaint them
+	private void sampleCharts() {
+		chart.sample();
+		heatmap.sample();
+		chart.repaint();
+		heatmap.repaint();
 	}
 
 	// top half of the GUI
@@ -73,9 +114,15 @@ public class DoubleAuctionAnimator extends JFrame {
 		topPanel.setLayout(new FlowLayout());
 		getContentPane().add(topPanel, BorderLayout.CENTER);
 
-		// intialize buy and sell list boxes and add them to the scroll panes
-		buyList = new JList(getBuyListData());
-		sellList = new JList(getSellListData());
+		// intialize buy and sell list boxes and add them to the scroll panes; the models
+		// follow the book themselves, and the fixed cell size keeps the lists from measuring
+		// every order
+		buyModel = new OrderBookListModel(das.getLOB(), false);
+		sellModel = new OrderBookListModel(das.getLOB(), true);
+		buyList = new JList(buyModel);
+		sellList = new JList(sellModel);
+		buyList.setPrototypeCellValue(CELL_PROTOTYPE);
+		sellList.setPrototypeCellValue(CELL_PROTOTYPE);
 
 		buyScrollPane = new JScrollPane();
 		buyScrollPane.getViewport().add(buyList);
@@ -130,6 +177,10 @@ public class DoubleAuctionAnimator extends JFrame {
 		controlButtons.add(startButton);
 		controlButtons.add(stepButton);
 		controlButtons.add(stopButton);
+
+		// run the simulation flat out on its own thread instead of one round per tick
+		backgroundBox = new JCheckBox("Background");
+		controlButtons.add(backgroundBox);
 		
 		// create the slider for controlling the speed of the animation
 		slider = new JSlider(JSlider.HORIZONTAL, 0, sliderMax, sliderMax / 2);
@@ -144,6 +195,7 @@ public class DoubleAuctionAnimator extends JFrame {
 			public void stateChanged(ChangeEvent e) {
 				if (!slider.getValueIsAdjusting()) {
 					setTimerDelay();
+					if (background != null) background.setTargetRate(getTargetRate());
 				}
 			}
 		});
@@ -154,6 +206,9 @@ public class DoubleAuctionAnimator extends JFrame {
 		timer = new Timer(1000, new StepActionListener());
 		setTimerDelay();
 
+		// in the background the frame timer only shows the latest snapshot
+		frameTimer = new Timer(frameDelay, new FrameActionListener());
+
 		// create the user info panel
 		JPanel userInfo = new JPanel();
 		((FlowLayout) userInfo.getLayout()).setHgap(50);
@@ -258,10 +313,52 @@ public class DoubleAuctionAnimator extends JFrame {
 		timer.setDelay(delay);
 	}
 
+	// in the background the slider sets a target rate instead, from rateMin rounds per
+	// second up to rateMax on a log scale, and flat out at the top
+	private double getTargetRate() {
+		if (slider.getValue() == sliderMax) return 0;
+		double sliderValue = slider.getValue() / ((double) sliderMax);
+		return rateMin * Math.pow(rateMax / rateMin, sliderValue);
+	}
+
+	// start running the simulation on its own thread; the book lists stop following the
+	// book, since it now changes off the event dispatch thread
+	private void startBackground() {
+		buyModel.detach();
+		sellModel.detach();
+		background = new BackgroundSimulation(das, snapshotDepth);
+		background.setTargetRate(getTargetRate());
+		background.addSnapshotTask(new Runnable() {
+			public void run() {
+				chart.sample();
+				heatmap.sample();
+			}
+		});
+		background.start();
+		background.requestSnapshot();
+		frameTimer.start();
+	}
+
+	// stop the simulation thread and go back to lists that follow the book
+	private void stopBackground() {
+		frameTimer.stop();
+		background.stop();
+		background.detach();
+		background = null;
+		buyModel = new OrderBookListModel(das.getLOB(), false);
+		sellModel = new OrderBookListModel(das.getLOB(), true);
+		buyList.setModel(buyModel);
+		sellList.setModel(sellModel);
+		sampleCharts();
+		refreshSimulation();
+	}
+
 	// action listener for the Start button (starts the timer/simulation)
 	private class StartActionListener implements ActionListener {
 		public void actionPerformed(ActionEvent e) {
-			timer.start();
+			if (backgroundBox.isSelected()) startBackground();
+			else timer.start();
+			backgroundBox.setEnabled(false);
 			stepButton.setEnabled(false);
 			stopButton.setEnabled(true);
 			startButton.setEnabled(false);
@@ -287,6 +384,33 @@ public class DoubleAuctionAnimator extends JFrame {
 		}
 	}
 
+	// action listener for the frame timer (shows the latest snapshot of a background run)
+	private class FrameActionListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			BackgroundSimulation.Snapshot snap = background.getSnapshot();
+			background.requestSnapshot();
+
+			buyList.setListData(snap.getBids());
+			sellList.setListData(snap.getAsks());
+			chart.repaint();
+			heatmap.repaint();
+			userShares.setText("UserShares: " + snap.getUserShares());
+			userMoney.setText("User Money: " + snap.getFormattedUserMoney());
+			roundNumber.setText(String.format("Round %d of %d (%,.0f rounds/sec)",
+					snap.getRound(), das.getNumRounds(), snap.getRoundsPerSecond()));
+
+			if (snap.isDone()) {
+				stopBackground();
+				stepButton.setEnabled(false);
+				stopButton.setEnabled(false);
+				startButton.setEnabled(false);
+				submitOrder.setEnabled(false);
+				das.printResults();
+				das.printUserTrades();
+			}
+		}
+	}
+
 	// print data on the simulation to System.out
 	private void printData() {
 		System.out.printf("%5d %6.4f %6.4f", das.getCurrentRound(), das.getLOB()
@@ -303,6 +427,9 @@ public class DoubleAuctionAnimator extends JFrame {
 	private class StopActionListener implements ActionListener {
 		public void actionPerformed(ActionEvent e) {
 			timer.stop();
+			if (background != null) stopBackground();
+			else sampleCharts();
+			backgroundBox.setEnabled(true);
 			stepButton.setEnabled(true);
 			stopButton.setEnabled(false);
 			startButton.setEnabled(true);
@@ -365,15 +492,12 @@ public class DoubleAuctionAnimator extends JFrame {
 		}
 	}
 
-	// refresh the GUI
+	// refresh the GUI (the order lists update themselves from the book)
 	private void refreshSimulation() {
-		sellList.setListData(getSellListData());
-		buyList.setListData(getBuyListData());
-
-		sellScrollPane.revalidate();
-		sellScrollPane.repaint();
-		buyScrollPane.revalidate();
-		buyScrollPane.repaint();
+		if (chart.update()) {
+			heatmap.sample();
+			heatmap.repaint();
+		}
 
 		// update the user information and round
 		userShares.setText("UserShares: " + das.getUserShares());
@@ -382,16 +506,6 @@ public class DoubleAuctionAnimator extends JFrame {
 				+ das.getNumRounds());
 	}
 
-	// get the buy list data
-	private LimitOrder[] getBuyListData() {
-		return das.getLOB().getBuyBookAsArray();
-	}
-
-	// get the sell list data
-	private LimitOrder[] getSellListData() {
-		return das.getLOB().getSellBookAsArray();
-	}
-
 	// run this to run the GUI, feel free to play around with the hard coded values below
 	public static void main(String[] args) {
 		//int numRounds = 1000;
@@ -0,0 +1,191 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Downsampled Series
+ * 
+ * A fixed-memory time series of one value per round, for charting a whole run.  The rounds
+ * are grouped into a fixed number of buckets that each keep their lowest and highest point;
+ * when the run outgrows the buckets, neighbouring pairs are merged and the buckets become
+ * twice as wide, so the series holds the full run at the finest resolution that fits and
+ * adding a point is amortized O(1).  Because the extremes of every bucket survive, spikes
+ * are never averaged away.
+ * 
+ * sample picks a given number of points out of the buckets with Steinarsson's
+ * largest-triangle-three-buckets (LTTB) algorithm, which keeps the points that shape the
+ * line, so a chart draws one point per pixel however long the history is.
+ */
+
+public class DownsampledSeries {
+
+	private int			capacity;  // number of buckets, even
+	private int			width;  // rounds per bucket, a power of 2
+	private int			size;  // buckets in use
+	private int[]		count;  // points in each bucket, 0 when empty
+	private int[]		minX;
+	private double[]	minY;
+	private int[]		maxX;
+	private double[]	maxY;
+
+	// scratch space for sample
+	private double[]	pointX;
+	private double[]	pointY;
+
+	public DownsampledSeries(int capacity) {
+		if (capacity < 2) throw new IllegalArgumentException(
+				"capacity must be at least 2");
+		this.capacity = capacity + (capacity & 1);
+		this.width = 1;
+		this.size = 0;
+		this.count = new int[this.capacity];
+		this.minX = new int[this.capacity];
+		this.minY = new double[this.capacity];
+		this.maxX = new int[this.capacity];
+		this.maxY = new double[this.capacity];
+		this.pointX = new double[2 * this.capacity];
+		this.pointY = new double[2 * this.capacity];
+	}
+
+	// get the number of rounds each bucket covers
+	public int getBucketWidth() {
+		return width;
+	}
+
+	// add the value of a round (rounds must not go backwards; NaN is skipped)
+	public void add(int round, double value) {
+		if (Double.isNaN(value) || round < 0) return;
+		int b = round / width;
+		while (b >= capacity) {
+			merge();
+			b = round / width;
+		}
+		while (size <= b) {
+			count[size++] = 0;
+		}
+		if (count[b] == 0) {
+			minX[b] = round;
+			minY[b] = value;
+			maxX[b] = round;
+			maxY[b] = value;
+		} else if (value < minY[b]) {
+			minX[b] = round;
+			minY[b] = value;
+		} else if (value > maxY[b]) {
+			maxX[b] = round;
+			maxY[b] = value;
+		}
+		count[b]++;
+	}
+
+	// merge neighbouring buckets pairwise, doubling their width
+	private void merge() {
+		int n = 0;
+		for (int i = 0; i < size; i += 2) {
+			int a = i;
+			int b = i + 1;
+			if (b >= size || count[b] == 0) {
+				copy(a, n);
+			} else if (count[a] == 0) {
+				copy(b, n);
+			} else {
+				int mx = (minY[b] < minY[a]) ? minX[b] : minX[a];
+				double my = Math.min(minY[a], minY[b]);
+				int Mx = (maxY[b] > maxY[a]) ? maxX[b] : maxX[a];
+				double My = Math.max(maxY[a], maxY[b]);
+				count[n] = count[a] + count[b];
+				minX[n] = mx;
+				minY[n] = my;
+				maxX[n] = Mx;
+				maxY[n] = My;
+			}
+			n++;
+		}
+		size = n;
+		width *= 2;
+	}
+
+	private void copy(int from, int to) {
+		count[to] = count[from];
+		minX[to] = minX[from];
+		minY[to] = minY[from];
+		maxX[to] = maxX[from];
+		maxY[to] = maxY[from];
+	}
+
+	// get the points kept, in round order, into x and y; returns how many
+	public int getPoints(double[] x, double[] y) {
+		int n = 0;
+		for (int b = 0; b < size; b++) {
+			if (count[b] == 0) continue;
+			boolean minFirst = minX[b] <= maxX[b];
+			x[n] = minFirst ? minX[b] : maxX[b];
+			y[n++] = minFirst ? minY[b] : maxY[b];
+			if (minX[b] != maxX[b]) {
+				x[n] = minFirst ? maxX[b] : minX[b];
+				y[n++] = minFirst ? maxY[b] : minY[b];
+			}
+		}
+		return n;
+	}
+
+	// pick at most threshold points that keep the shape of the series into x and y
+	// (threshold at least 3); returns how many
+	public int sample(int threshold, double[] x, double[] y) {
+		int n = getPoints(pointX, pointY);
+		return lttb(pointX, pointY, n, threshold, x, y);
+	}
+
+	// largest-triangle-three-buckets: keep the first and last points, and from each of
+	// threshold - 2 buckets in between the point making the largest triangle with the point
+	// kept before it and the average of the next bucket
+	public static int lttb(double[] x, double[] y, int n, int threshold,
+			double[] outX, double[] outY) {
+		if (threshold < 3) throw new IllegalArgumentException(
+				"threshold must be at least 3");
+		if (threshold >= n) {
+			System.arraycopy(x, 0, outX, 0, n);
+			System.arraycopy(y, 0, outY, 0, n);
+			return n;
+		}
+		double every = (double) (n - 2) / (threshold - 2);
+		int a = 0;
+		int k = 0;
+		outX[k] = x[0];
+		outY[k++] = y[0];
+		for (int i = 0; i < threshold - 2; i++) {
+			// the average of the next bucket
+			int nextStart = (int) ((i + 1) * every) + 1;
+			int nextEnd = Math.min((int) ((i + 2) * every) + 1, n);
+			double avgX = 0;
+			double avgY = 0;
+			for (int j = nextStart; j < nextEnd; j++) {
+				avgX += x[j];
+				avgY += y[j];
+			}
+			int len = nextEnd - nextStart;
+			avgX /= len;
+			avgY /= len;
+
+			// the point of this bucket with the largest triangle
+			int start = (int) (i * every) + 1;
+			int end = (int) ((i + 1) * every) + 1;
+			double ax = x[a];
+			double ay = y[a];
+			double maxArea = -1;
+			int next = start;
+			for (int j = start; j < end; j++) {
+				double area = Math.abs((ax - avgX) * (y[j] - ay) - (ax - x[j])
+						* (avgY - ay));
+				if (area > maxArea) {
+					maxArea = area;
+					next = j;
+				}
+			}
+			outX[k] = x[next];
+			outY[k++] = y[next];
+			a = next;
+		}
+		outX[k] = x[n - 1];
+		outY[k++] = y[n - 1];
+		return k;
+	}
+}
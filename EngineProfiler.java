@@ -0,0 +1,109 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Engine Profiler
+ * 
+ * Optional instrumentation for the DAS engines.  Keeps one LatencyHistogram per phase of a
+ * round (interest, history, statistics, expirations, agent decision) and per call into the
+ * limit order book (market orders and limit submits).  Simulations and the limit order book
+ * only call into the profiler when one has been set, so a run without one pays a single null
+ * check per phase.  A profiler is meant to be used by one simulation thread at a time.
+ */
+
+public class EngineProfiler {
+
+	// phases of a round
+	public static final int		INTEREST			= 0;
+	public static final int		HISTORY			= 1;
+	public static final int		STATISTICS		= 2;
+	public static final int		EXPIRY			= 3;
+	public static final int		AGENT				= 4;
+	public static final int		ROUND				= 5;
+
+	// calls into the limit order book
+	public static final int		MARKET_ORDER	= 6;
+	public static final int		LIMIT_BUY		= 7;
+	public static final int		LIMIT_SELL		= 8;
+
+	private static final String[]	NAMES	= { "interest", "history",
+			"statistics", "expiry", "agent", "round", "market order",
+			"limit buy", "limit sell" };
+
+	private LatencyHistogram[]	histograms;
+	private long[]					lastRecorded;  // latest latency of each phase
+
+	public EngineProfiler() {
+		this.lastRecorded = new long[NAMES.length];
+		this.histograms = new LatencyHistogram[NAMES.length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	// get the number of phases tracked by the profiler
+	public static int getNumPhases() {
+		return NAMES.length;
+	}
+
+	// get the printable name of a phase
+	public static String getPhaseName(int phase) {
+		return NAMES[phase];
+	}
+
+	// record the latency of one phase
+	public void record(int phase, long nanos) {
+		histograms[phase].record(nanos);
+		lastRecorded[phase] = nanos;
+	}
+
+	// record the time since start for the phase and return the current time, so that
+	// consecutive phases of a round can be timed with one call each
+	public long lap(int phase, long start) {
+		long now = System.nanoTime();
+		histograms[phase].record(now - start);
+		lastRecorded[phase] = now - start;
+		return now;
+	}
+
+	// get the latency most recently recorded for a phase (ie. in the last round)
+	public long getLastRecorded(int phase) {
+		return lastRecorded[phase];
+	}
+
+	// get the histogram for one phase
+	public LatencyHistogram getHistogram(int phase) {
+		return histograms[phase];
+	}
+
+	// add the results of another profiler to this one (eg. from a parallel run)
+	public void add(EngineProfiler that) {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i].add(that.histograms[i]);
+		}
+	}
+
+	// clear all recorded latencies
+	public void reset() {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i].reset();
+		}
+	}
+
+	// print the percentile report for every phase that recorded something
+	public void printReport() {
+		System.out.println("+--------------+-----------+---------+--------+--------+--------+----------+----------+");
+		System.out.println("|    Phase     |   Count   | Mean ns | p50 ns | p90 ns | p99 ns | p99.9 ns |  Max ns  |");
+		System.out.println("|--------------|-----------|---------|--------|--------|--------|----------|----------|");
+		for (int i = 0; i < histograms.length; i++) {
+			LatencyHistogram h = histograms[i];
+			if (h.getCount() == 0) continue;
+			System.out.printf("|%-14s|%11d|%9.1f|%8d|%8d|%8d|%10d|%10d|", NAMES[i],
+					h.getCount(), h.getMean(), h.getValueAtPercentile(50),
+					h.getValueAtPercentile(90), h.getValueAtPercentile(99),
+					h.getValueAtPercentile(99.9), h.getMax());
+			System.out.println();
+		}
+		System.out.println("+--------------+-----------+---------+--------+--------+--------+----------+----------+");
+		System.out.println();
+	}
+}
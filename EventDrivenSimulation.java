@@ -0,0 +1,507 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * EventDrivenSimulation class - implements DAS
+ * A continuous time version of the double auction simulation.  Instead of one agent acting
+ * per round, each class of agents arrives at the market as a Poisson process with its own
+ * rate per agent, so a few fast traders can trade among many slow ones.  Order arrivals,
+ * expiries and interest payments are all events in one queue ordered by time, and the
+ * simulation jumps from each event straight to the next.
+ * 
+ * Rounds are kept as units of time (round = floor(time)) so the agents, expirations and
+ * round listeners work as before: the price history and averages get one entry per unit
+ * of time, filled in bulk for the stretches between events, when the book can't change.
+ * 
+ * CI agents quote against the last round's price, so the CI arrivals that follow each
+ * other within a round are priced together by the batch CI kernel when the first of them
+ * comes up, and then submitted one per nextBid as usual.  The batch takes the random
+ * draws in the same order as one arrival at a time, so the run is exactly the same.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+public class EventDrivenSimulation implements DAS {
+
+	private static final int	ARRIVAL	= 0;
+	private static final int	EXPIRY	= 1;
+	private static final int	INTEREST	= 2;
+
+	private int						numRounds;  // the length of the simulation in units of time
+	private int						currentRound;  // the rounds (units of time) completed
+	private double					time;
+	private boolean				expirationOn;
+	private Random					random;
+
+	private LimitOrderBook		lob;
+	private AgentPopulation		population;
+	private AutomaticTraders	at;  // for printing
+	private Agent					ua;
+	private ArrayList<Double>	priceHistory;
+
+	// the agent classes: a run of agents in the population arriving at the same rate
+	private ArrayList<int[]>	classes;  // { first agent, number of agents }
+	private ArrayList<Double>	rates;  // arrival rate of each agent of the class
+	private int						numZeroIntel;
+	private int						numChartists;
+	private int						numCI;
+
+	private PriorityQueue<Event>	events;
+	private int						scheduledExpiry;  // time of the earliest expiry event
+
+	// CI arrivals quoted ahead, submitted from batchNext on
+	private int[]					batchAgent;
+	private double[]				batchTime;
+	private double[]				batchPrice;
+	private boolean[]				batchBuy;
+	private int						batchSize;
+	private int						batchNext;
+
+	private boolean				interestOn;
+	private double					interestRate;
+	private double					dividend;
+	private int						interestPeriod;
+
+	private double					averageSpread;
+	private double					averageBids;
+	private double					averageAsks;
+
+	private EngineProfiler		profiler;  // optional timings of the arrivals, null when off
+	private ArrayList<RoundListener>	roundListeners;  // called at the end of every round
+	private InterestAccrual		accrual;  // pays interest and dividends lazily to all agents
+
+	// create a simulation that runs for numRounds units of time with room for maxAgents
+	// automatic agents
+	public EventDrivenSimulation(int numRounds, int maxAgents, boolean exp,
+											Random random) {
+		this.numRounds = numRounds;
+		this.currentRound = 0;
+		this.time = 0.0;
+		this.expirationOn = exp;
+		this.random = random;
+
+		this.lob = new LimitOrderBook(exp);
+		this.population = new AgentPopulation(maxAgents, lob, this, SimRandom
+				.split(random));
+		this.ua = new UserAgent(1000.00, 20, lob, 0);
+		this.priceHistory = new ArrayList<Double>();
+		this.classes = new ArrayList<int[]>();
+		this.rates = new ArrayList<Double>();
+		this.events = new PriorityQueue<Event>();
+		this.scheduledExpiry = Integer.MAX_VALUE;
+		this.batchAgent = new int[16];
+		this.batchTime = new double[16];
+		this.batchPrice = new double[16];
+		this.batchBuy = new boolean[16];
+		this.interestOn = false;
+		this.roundListeners = new ArrayList<RoundListener>();
+		this.accrual = new InterestAccrual();
+		population.setInterestAccrual(accrual);
+		((UserAgent) ua).setInterestAccrual(accrual);
+	}
+
+	public EventDrivenSimulation(int numRounds, int maxAgents, boolean exp) {
+		this(numRounds, maxAgents, exp, new SimRandom());
+	}
+
+	// add a class of zero intelligence agents, each arriving rate times per unit of time
+	public void addZeroIntel(int number, double rate, double lp, double sp,
+			double interval, int ex) {
+		int first = population.size();
+		for (int i = 0; i < number; i++) {
+			population.addZeroIntel(1000.00, 20, ++numZeroIntel, lp, sp, interval,
+					ex);
+		}
+		addClass(first, number, rate);
+	}
+
+	// add a class of chartist agents, each arriving rate times per unit of time
+	public void addChartists(int number, double rate, double lp, double sp,
+			double interval, int ex, int history) {
+		int first = population.size();
+		for (int i = 0; i < number; i++) {
+			population.addChartist(1000.00, 20, ++numChartists, lp, sp, interval,
+					ex, history);
+		}
+		addClass(first, number, rate);
+	}
+
+	// add a class of CI agents, each arriving rate times per unit of time, with their
+	// weights drawn as in CISimulation
+	public void addCI(int number, double rate, double pf, int tau, double delta,
+			double std1, double std2, double n0, int lmax, double kmax) {
+		int first = population.size();
+		for (int i = 0; i < number; i++) {
+			double g1 = Math.abs(random.nextGaussian() * std1);
+			double g2 = random.nextGaussian() * std2;
+			double n = random.nextGaussian() * n0;
+			int li = random.nextInt(lmax) + 1;
+			double ki = random.nextDouble() * kmax;
+			population.addCI(1000.00, 20, ++numCI, pf, tau, g1, g2, n, li, ki,
+					delta);
+		}
+		addClass(first, number, rate);
+	}
+
+	// schedule the first arrival of a new class of agents
+	private void addClass(int first, int number, double rate) {
+		if (number <= 0) return;
+		if (rate <= 0) throw new IllegalArgumentException(
+				"arrival rate must be positive: " + rate);
+		classes.add(new int[] { first, number });
+		rates.add(rate);
+		at = null;
+		Event e = new Event(ARRIVAL, classes.size() - 1);
+		scheduleArrival(e, time);
+	}
+
+	// pay interest on money and a dividend per share every period units of time
+	public void setInterest(double interestRate, double dividend, int period) {
+		this.interestOn = true;
+		this.interestRate = interestRate;
+		this.dividend = dividend;
+		this.interestPeriod = period;
+		Event e = new Event(INTEREST, 0);
+		e.time = period;
+		events.add(e);
+	}
+
+	// get the type of the simulation (0 is zero intel only, 1 has chartists, 2 has CI
+	// agents)
+	public int getType() {
+		if (numCI > 0) return 2;
+		return (numChartists > 0) ? 1 : 0;
+	}
+
+	// get the number of zero intelligence traders
+	public int getNumZeroIntel() {
+		return numZeroIntel;
+	}
+
+	// get the number of chartist traders
+	public int getNumChartists() {
+		return numChartists;
+	}
+
+	// get the total number of agents
+	public int getNumAgents() {
+		return population.size();
+	}
+
+	// get the price history of the last rounds
+	public Double[] getHistory(int rounds) {
+		return priceHistory.subList(currentRound - rounds, currentRound).toArray(
+				new Double[rounds]);
+	}
+
+	// get the whole history
+	public Double[] getHistory() {
+		return priceHistory.toArray(new Double[priceHistory.size()]);
+	}
+
+	// get the limit order book
+	public LimitOrderBook getLOB() {
+		return lob;
+	}
+
+	// get the prices and book sizes of the market
+	public MarketQuotes getQuotes() {
+		return lob;
+	}
+
+	// get the total number of rounds (units of time)
+	public int getNumRounds() {
+		return numRounds;
+	}
+
+	// get the number of rounds (units of time) completed
+	public int getCurrentRound() {
+		return currentRound;
+	}
+
+	// get the simulation clock
+	public double getTime() {
+		return time;
+	}
+
+	// process events up to and including the next order arrival
+	public boolean nextBid() {
+		if (isDone()) return false;
+		if (batchNext < batchSize) {
+			long start = 0;
+			if (profiler != null) start = System.nanoTime();
+			return submitQuoted(start);
+		}
+		while (true) {
+			Event e = events.peek();
+			if (e == null || e.time >= numRounds) {
+				advanceTo(numRounds);
+				return true;
+			}
+			events.poll();
+			advanceTo(e.time);
+
+			if (e.kind == ARRIVAL) {
+				long start = 0;
+				if (profiler != null) start = System.nanoTime();
+				if (isCI(e.cls)) {
+					quoteArrivals(e);
+					return submitQuoted(start);
+				}
+				int[] c = classes.get(e.cls);
+				boolean success = population.submitOrder(c[0]
+						+ random.nextInt(c[1]), currentRound);
+				scheduleArrival(e, time);
+				scheduleExpiry();
+				if (profiler != null) profiler.record(EngineProfiler.AGENT, System
+						.nanoTime()
+						- start);
+				return success;
+			} else if (e.kind == EXPIRY) {
+				// orders expiring in round r are cleared at the end of it, at time r + 1
+				lob.clearExpiredBids((int) e.time - 1);
+				if ((int) e.time == scheduledExpiry) scheduledExpiry = Integer.MAX_VALUE;
+				scheduleExpiry();
+			} else {
+				accrual.pay(interestRate, dividend);
+				fireInterestApplied(currentRound);
+				e.time += interestPeriod;
+				events.add(e);
+			}
+		}
+	}
+
+	// the user's order arrives at the current time
+	public boolean submitUserOrder(boolean isLimit, boolean isSell, int size,
+			double price, int expiration) {
+		if (isDone()) return false;
+		boolean success = ua.submitOrder(isLimit, isSell, size, price,
+				currentRound + expiration);
+		scheduleExpiry();
+		return success;
+	}
+
+	// is the simulation done?
+	public boolean isDone() {
+		return currentRound == numRounds;
+	}
+
+	// move the clock to t, completing the rounds passed on the way; nothing in the book
+	// changes between events, so each stretch of rounds gets the same price and averages
+	private void advanceTo(double t) {
+		int end = Math.min((int) Math.floor(t), numRounds);
+		if (end > currentRound) {
+			int length = end - currentRound;
+			priceHistory.addAll(Collections.nCopies(length, lob
+					.getMidpointPrice()));
+			if (lob.getMarketSpread() > 0) averageSpread += length
+					* lob.getMarketSpread();
+			if (lob.getBuyBookSize() > 0) averageBids += length
+					* lob.getBuyBookSize();
+			if (lob.getSellBookSize() > 0) averageAsks += length
+					* lob.getSellBookSize();
+			while (currentRound < end) {
+				currentRound++;
+				fireRoundCompleted(currentRound - 1);
+			}
+		}
+		time = Math.max(time, Math.min(t, numRounds));
+	}
+
+	// the next arrival of a class after time from: the first of its agents' Poisson
+	// processes to fire
+	private void scheduleArrival(Event e, double from) {
+		double total = rates.get(e.cls) * classes.get(e.cls)[1];
+		e.time = from - Math.log(1.0 - random.nextDouble()) / total;
+		events.add(e);
+	}
+
+	// is the agent class cls made of CI agents?
+	private boolean isCI(int cls) {
+		return population.getType(classes.get(cls)[0]) == AgentPopulation.CI;
+	}
+
+	// pick the agents of the CI arrival e and of the CI arrivals right after it in the
+	// same round, scheduling each class's next arrival as it goes, and quote them all
+	// against this round's price
+	private void quoteArrivals(Event e) {
+		batchSize = 0;
+		batchNext = 0;
+		while (true) {
+			if (batchSize == batchAgent.length) {
+				int length = batchSize * 2;
+				batchAgent = Arrays.copyOf(batchAgent, length);
+				batchTime = Arrays.copyOf(batchTime, length);
+				batchPrice = Arrays.copyOf(batchPrice, length);
+				batchBuy = Arrays.copyOf(batchBuy, length);
+			}
+			int[] c = classes.get(e.cls);
+			batchAgent[batchSize] = c[0] + random.nextInt(c[1]);
+			batchTime[batchSize] = e.time;
+			batchSize++;
+			scheduleArrival(e, e.time);
+			// expiries and interest payments fall on whole units of time, so only
+			// arrivals can come up before the round ends
+			Event next = events.peek();
+			if (next == null || next.kind != ARRIVAL || next.time >= currentRound + 1
+					|| !isCI(next.cls)) break;
+			e = events.poll();
+		}
+		population.quoteCI(currentRound, batchAgent, batchSize, batchPrice, batchBuy);
+	}
+
+	// submit the next quoted CI arrival at its time (within the current round)
+	private boolean submitQuoted(long start) {
+		int k = batchNext++;
+		advanceTo(batchTime[k]);
+		boolean success = population.submitCI(batchAgent[k], currentRound,
+				batchPrice[k], batchBuy[k]);
+		scheduleExpiry();
+		if (profiler != null) profiler.record(EngineProfiler.AGENT, System
+				.nanoTime()
+				- start);
+		return success;
+	}
+
+	// make sure there is an expiry event for the earliest order due to expire
+	private void scheduleExpiry() {
+		if (!expirationOn) return;
+		int next = lob.getNextExpiration();
+		if (next == Integer.MAX_VALUE) return;
+		int at = Math.max(next + 1, currentRound + 1);
+		if (at >= scheduledExpiry) return;
+		Event e = new Event(EXPIRY, 0);
+		e.time = at;
+		events.add(e);
+		scheduledExpiry = at;
+	}
+
+	// set the profiler that times the order arrivals (null turns it off)
+	public void setProfiler(EngineProfiler profiler) {
+		this.profiler = profiler;
+		lob.setProfiler(profiler);
+	}
+
+	// add a listener to be called at the end of every round
+	public void addRoundListener(RoundListener listener) {
+		roundListeners.add(listener);
+	}
+
+	// let the round listeners know interest and dividends were paid out
+	private void fireInterestApplied(int round) {
+		for (int i = 0; i < roundListeners.size(); i++) {
+			roundListeners.get(i).interestApplied(this, round, interestRate,
+					dividend);
+		}
+	}
+
+	// let the round listeners know a round has been processed
+	private void fireRoundCompleted(int round) {
+		for (int i = 0; i < roundListeners.size(); i++) {
+			roundListeners.get(i).roundCompleted(this, round);
+		}
+	}
+
+	// get the current level of the user's money
+	public double getUserMoney() {
+		return ua.getMoney();
+	}
+
+	// get the current level of the user's money, formatted nicely
+	public String getFormattedUserMoney() {
+		return ((UserAgent) ua).getFormattedMoney();
+	}
+
+	// get the current number of user shares
+	public int getUserShares() {
+		return ua.getShares();
+	}
+
+	// get the average spread over the rounds processed so far
+	public double getAverageSpread() {
+		return (currentRound == 0) ? 0.0 : averageSpread / currentRound;
+	}
+
+	// get the average size of the buy book over the rounds processed so far
+	public double getAverageBids() {
+		return (currentRound == 0) ? 0.0 : averageBids / currentRound;
+	}
+
+	// get the average size of the sell book over the rounds processed so far
+	public double getAverageAsks() {
+		return (currentRound == 0) ? 0.0 : averageAsks / currentRound;
+	}
+
+	// print data on the simulation
+	public void printData() {
+		System.out.printf("%6.4f, %6.4f, %6d, %6d", lob.getMidpointPrice(),
+				lob.getMarketSpread(), lob.getBuyBookSize(), lob.getSellBookSize());
+		System.out.println();
+	}
+
+	// print the number of the user trades completed
+	public void printUserTrades() {
+		System.out.println("User Trades = " + ua.getTradesCompleted());
+	}
+
+	// print the average spread (with the time simulated, whatever the option)
+	public void printAverageSpread(int i) {
+		System.out.printf("%8.1f, %5.2f", time, getAverageSpread());
+		System.out.println();
+	}
+
+	// print the results of the simulation
+	public void printResults() {
+		if (at == null) at = new AutomaticTraders(population, random);
+		System.out.println("Final Price = " + lob.getMidpointPrice());
+		ua.printFinalData(lob.getMidpointPrice());
+		at.printFinalData(lob.getMidpointPrice());
+	}
+
+	// an event in the queue, ordered by time
+	private static class Event implements Comparable<Event> {
+		private int		kind;
+		private int		cls;  // the agent class of an arrival
+		private double	time;
+
+		private Event(int kind, int cls) {
+			this.kind = kind;
+			this.cls = cls;
+		}
+
+		public int compareTo(Event that) {
+			return Double.compare(this.time, that.time);
+		}
+	}
+
+	// a few fast zero intelligence traders among many slow ones: 10 agents arriving once
+	// per 20 units of time each and 100000 arriving once per 200000 units, and optionally
+	// a number of CI agents arriving once per 1000 units each (with CISimulation's
+	// parameters): EventDrivenSimulation [rounds] [CI agents]
+	public static void main(String[] args) {
+		int numRounds = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		int numCI = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+		EventDrivenSimulation eds = new EventDrivenSimulation(numRounds,
+				100010 + numCI, true);
+		eds.addZeroIntel(10, 0.05, 0.7, 0.5, 5, 1000);
+		eds.addZeroIntel(100000, 0.000005, 0.7, 0.5, 5, 1000);
+		if (numCI > 0) eds.addCI(numCI, 0.001, 1000, 200, 0.01, 0.1, 0.14, 0.3, 100,
+				0.5);
+
+		long start = System.nanoTime();
+		int orders = 0;
+		while (!eds.isDone()) {
+			eds.nextBid();
+			orders++;
+		}
+		System.out.printf("%d orders in %d rounds, %.2fs", orders, numRounds,
+				(System.nanoTime() - start) / 1e9);
+		System.out.println();
+		System.out.printf("spread %.4f, bids %.2f, asks %.2f", eds
+				.getAverageSpread(), eds.getAverageBids(), eds.getAverageAsks());
+		System.out.println();
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Event Recorder - implements BookListener, RoundListener
+ * 
+ * A flight recorder for the simulation.  Records order submitted, fill, expiry batch, round
+ * completed (with the phase timings of the round) and interest applied events into a fixed
+ * size ring of primitive arrays, so recording an event allocates nothing and costs a few
+ * array stores.  The simulation thread is the only writer; other threads (see
+ * EventStreamMonitor) can read the ring while the simulation runs.  When readers fall more
+ * than a ring behind, the oldest events are overwritten and reported as dropped, but the
+ * running totals of each kind of event are always exact.
+ * 
+ * This is not Java Flight Recorder.  Custom JFR events need the jdk.jfr API of Java 9 (or
+ * the commercial API of Oracle's Java 7u40+), and this project targets Java 1.6, so the
+ * recorder is a stand-in with a smaller scope: its events are only visible to readers in
+ * the same JVM, and GC and JIT activity can only be lined up by the window they fall in
+ * (see EventStreamMonitor), not event by event on one timeline as JFR would.
+ */
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class EventRecorder implements BookListener, RoundListener {
+
+	// kinds of events
+	public static final int	ORDER_SUBMITTED	= 0;
+	public static final int	FILL					= 1;
+	public static final int	EXPIRY_BATCH		= 2;
+	public static final int	ROUND_COMPLETED	= 3;
+	public static final int	INTEREST_APPLIED	= 4;
+	public static final int	NUM_KINDS			= 5;
+
+	// phases of a round carried by round completed events
+	public static final int	NUM_PHASES			= EngineProfiler.AGENT + 1;
+
+	private int					mask;
+	private int[]				kinds;
+	private long[]				times;  // System.nanoTime() when the event was recorded
+	private int[]				rounds;
+	private int[]				sizes;  // order size, fill size, or number of expired orders
+	private int[]				flags;  // limit/sell flags and agent types
+	private double[]			values; // order or fill price, midpoint, or interest rate
+	private double[]			extras; // dividend of interest events
+	private long[]				durations;  // length of the round
+	private long[]				phases;  // NUM_PHASES phase timings per slot
+
+	private long[]				counts;  // events (expired orders for expiries) of each kind, owned by the writer
+	private AtomicLongArray	totals;  // published copy of counts
+	private long				next;  // next sequence number to write, owned by the writer
+	private AtomicLong		published;  // every sequence below this is readable
+	private int					currentRound;
+	private EngineProfiler	profiler;
+
+	// the ring holds 2^bits events
+	public EventRecorder(int bits) {
+		int capacity = 1 << bits;
+		this.mask = capacity - 1;
+		this.kinds = new int[capacity];
+		this.times = new long[capacity];
+		this.rounds = new int[capacity];
+		this.sizes = new int[capacity];
+		this.flags = new int[capacity];
+		this.values = new double[capacity];
+		this.extras = new double[capacity];
+		this.durations = new long[capacity];
+		this.phases = new long[capacity * NUM_PHASES];
+		this.counts = new long[NUM_KINDS];
+		this.totals = new AtomicLongArray(NUM_KINDS);
+		this.next = 0;
+		this.published = new AtomicLong(0);
+		this.currentRound = 0;
+	}
+
+	public EventRecorder() {
+		this(16);
+	}
+
+	// start recording a simulation, with its own profiler for the round phase timings
+	public void attach(DAS das) {
+		EngineProfiler p = new EngineProfiler();
+		das.setProfiler(p);
+		attach(das, p);
+	}
+
+	// start recording a simulation whose rounds are timed by profiler (may be null if
+	// the round events should not carry timings)
+	public void attach(DAS das, EngineProfiler profiler) {
+		this.profiler = profiler;
+		this.currentRound = das.getCurrentRound();
+		das.addRoundListener(this);
+		das.getLOB().addListener(this);
+	}
+
+	// get the number of events the ring can hold
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	// get the total number of events of a kind recorded so far (for EXPIRY_BATCH, the
+	// total number of expired orders)
+	public long getTotal(int kind) {
+		return totals.get(kind);
+	}
+
+	// get the sequence number of the next event to be published
+	public long getPublished() {
+		return published.get();
+	}
+
+	public void orderSubmitted(Agent agent, boolean isLimit, boolean isSell,
+			int size, double price) {
+		int i = claim(ORDER_SUBMITTED);
+		sizes[i] = size;
+		values[i] = price;
+		flags[i] = (isLimit ? 1 : 0) | (isSell ? 2 : 0) | (agent.getType() << 2);
+		publish();
+	}
+
+	public void tradeCleared(Agent buyer, Agent seller, int size, double price) {
+		int i = claim(FILL);
+		sizes[i] = size;
+		values[i] = price;
+		flags[i] = buyer.getType() | (seller.getType() << 8);
+		publish();
+	}
+
+	public void ordersExpired(int round, int count) {
+		int i = claim(EXPIRY_BATCH);
+		sizes[i] = count;
+		// count every expired order rather than every batch
+		counts[EXPIRY_BATCH] += count - 1;
+		publish();
+	}
+
+	public void interestApplied(MarketSimulation sim, int round, double interestRate,
+			double dividend) {
+		int i = claim(INTEREST_APPLIED);
+		values[i] = interestRate;
+		extras[i] = dividend;
+		publish();
+	}
+
+	public void roundCompleted(MarketSimulation sim, int round) {
+		currentRound = round;
+		int i = claim(ROUND_COMPLETED);
+		MarketQuotes lob = sim.getQuotes();
+		values[i] = lob.getMidpointPrice();
+		sizes[i] = lob.getBuyBookSize() + lob.getSellBookSize();
+		if (profiler != null) {
+			durations[i] = profiler.getLastRecorded(EngineProfiler.ROUND);
+			for (int p = 0; p < NUM_PHASES; p++) {
+				phases[i * NUM_PHASES + p] = profiler.getLastRecorded(p);
+			}
+		}
+		publish();
+		// events from the book belong to the round after this one
+		currentRound = round + 1;
+	}
+
+	// claim the next slot in the ring and fill in the common fields
+	private int claim(int kind) {
+		counts[kind]++;
+		int i = (int) (next & mask);
+		kinds[i] = kind;
+		times[i] = System.nanoTime();
+		rounds[i] = currentRound;
+		sizes[i] = 0;
+		flags[i] = 0;
+		values[i] = 0.0;
+		extras[i] = 0.0;
+		durations[i] = 0;
+		return i;
+	}
+
+	// make the claimed slot visible to readers
+	private void publish() {
+		int kind = kinds[(int) (next & mask)];
+		totals.lazySet(kind, counts[kind]);
+		published.lazySet(++next);
+	}
+
+	// copy the event with the given sequence number into e; returns false if the event
+	// has already been overwritten (or has not been published yet)
+	public boolean read(long sequence, Event e) {
+		if (sequence >= published.get()) return false;
+		int i = (int) (sequence & mask);
+		e.kind = kinds[i];
+		e.time = times[i];
+		e.round = rounds[i];
+		e.size = sizes[i];
+		e.flags = flags[i];
+		e.value = values[i];
+		e.extra = extras[i];
+		e.duration = durations[i];
+		for (int p = 0; p < NUM_PHASES; p++) {
+			e.phases[p] = phases[i * NUM_PHASES + p];
+		}
+		// the writer may have lapped us while we were copying; it fills the slot of the
+		// next sequence before publishing it, and that slot is ours once it is a ring ahead
+		return published.get() - sequence < mask + 1;
+	}
+
+	// a reusable copy of one recorded event
+	public static class Event {
+		private int		kind;
+		private long	time;
+		private int		round;
+		private int		size;
+		private int		flags;
+		private double	value;
+		private double	extra;
+		private long	duration;
+		private long[]	phases	= new long[NUM_PHASES];
+
+		// get the kind of event (ORDER_SUBMITTED, FILL, ...)
+		public int getKind() {
+			return kind;
+		}
+
+		// get the System.nanoTime() when the event was recorded
+		public long getTime() {
+			return time;
+		}
+
+		// get the round the event happened in
+		public int getRound() {
+			return round;
+		}
+
+		// get the order size, fill size, expired order count or book depth
+		public int getSize() {
+			return size;
+		}
+
+		// is this order submitted event a limit order?
+		public boolean isLimit() {
+			return (flags & 1) != 0;
+		}
+
+		// is this order submitted event a sell order?
+		public boolean isSell() {
+			return (flags & 2) != 0;
+		}
+
+		// get the type of agent that submitted the order
+		public int getAgentType() {
+			return flags >> 2;
+		}
+
+		// get the type of the buying agent of a fill
+		public int getBuyerType() {
+			return flags & 0xff;
+		}
+
+		// get the type of the selling agent of a fill
+		public int getSellerType() {
+			return flags >> 8;
+		}
+
+		// get the order/fill price, the midpoint after a round, or the interest rate
+		public double getValue() {
+			return value;
+		}
+
+		// get the dividend of an interest applied event
+		public double getDividend() {
+			return extra;
+		}
+
+		// get the length of a completed round in nanoseconds
+		public long getDuration() {
+			return duration;
+		}
+
+		// get the length of one phase of a completed round in nanoseconds
+		public long getPhase(int phase) {
+			return phases[phase];
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Event Stream Monitor
+ * 
+ * Streaming consumer of an EventRecorder.  A daemon thread wakes up every period, reads the
+ * events recorded since its last visit and prints a rolling summary: throughput of rounds,
+ * orders, fills and expirations, the slowest rounds over a threshold (with their phase
+ * timings) and the garbage collections and JIT compilation time of the same window, so slow
+ * rounds can be lined up against GC pauses and compilation.  The JVM only exposes counts and
+ * totals of those on Java 1.6, so they are matched by window, not to individual rounds.
+ */
+import java.io.PrintStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+public class EventStreamMonitor implements Runnable {
+
+	private static final int	MAX_SLOW	= 3;  // slow rounds printed per window
+
+	private EventRecorder		recorder;
+	private long					periodMillis;
+	private long					slowRoundNanos;
+	private PrintStream			out;
+	private volatile boolean	running;
+	private Thread					thread;
+
+	private long					nextSequence;
+	private long[]					lastTotals;
+	private long					startTime;
+	private long					lastGcCount;
+	private long					lastGcMillis;
+	private long					lastJitMillis;
+	private EventRecorder.Event	event;
+	private long[]					slowDurations;
+	private int[]					slowRounds;
+	private long[][]				slowPhases;
+
+	public EventStreamMonitor(EventRecorder recorder, long periodMillis,
+										long slowRoundNanos, PrintStream out) {
+		this.recorder = recorder;
+		this.periodMillis = periodMillis;
+		this.slowRoundNanos = slowRoundNanos;
+		this.out = out;
+		this.running = false;
+		this.event = new EventRecorder.Event();
+		this.lastTotals = new long[EventRecorder.NUM_KINDS];
+		this.slowDurations = new long[MAX_SLOW];
+		this.slowRounds = new int[MAX_SLOW];
+		this.slowPhases = new long[MAX_SLOW][EventRecorder.NUM_PHASES];
+	}
+
+	public EventStreamMonitor(EventRecorder recorder) {
+		this(recorder, 1000, 1000000, System.out);
+	}
+
+	// start printing summaries in the background
+	public void start() {
+		if (running) return;
+		running = true;
+		nextSequence = recorder.getPublished();
+		for (int k = 0; k < EventRecorder.NUM_KINDS; k++) {
+			lastTotals[k] = recorder.getTotal(k);
+		}
+		startTime = System.nanoTime();
+		lastGcCount = gcCount();
+		lastGcMillis = gcMillis();
+		lastJitMillis = jitMillis();
+		thread = new Thread(this, "event-stream-monitor");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// stop the background thread, printing one final summary
+	public void stop() {
+		running = false;
+		if (thread == null) return;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	public void run() {
+		long windowStart = System.nanoTime();
+		while (running) {
+			try {
+				Thread.sleep(periodMillis);
+			} catch (InterruptedException e) {
+				// woken up by stop()
+			}
+			long now = System.nanoTime();
+			summarize(now - windowStart);
+			windowStart = now;
+		}
+	}
+
+	// read everything recorded since the last window and print a summary line
+	private void summarize(long windowNanos) {
+		long dropped = 0;
+		for (int i = 0; i < MAX_SLOW; i++) {
+			slowDurations[i] = 0;
+		}
+
+		// throughput comes from the exact running totals
+		long[] window = new long[EventRecorder.NUM_KINDS];
+		for (int k = 0; k < EventRecorder.NUM_KINDS; k++) {
+			long total = recorder.getTotal(k);
+			window[k] = total - lastTotals[k];
+			lastTotals[k] = total;
+		}
+
+		// the slow rounds come from the events still in the ring
+		long published = recorder.getPublished();
+		// the oldest sequence still safe to read is one less than a ring behind, the
+		// writer may be filling the slot of the one before it
+		long oldest = published - recorder.getCapacity() + 1;
+		if (nextSequence < oldest) {
+			dropped += oldest - nextSequence;
+			nextSequence = oldest;
+		}
+		while (nextSequence < published) {
+			if (!recorder.read(nextSequence++, event)) {
+				dropped++;
+				continue;
+			}
+			if (event.getKind() == EventRecorder.ROUND_COMPLETED
+					&& event.getDuration() >= slowRoundNanos) keepSlowRound(event);
+		}
+
+		long gcCount = gcCount();
+		long gcMillis = gcMillis();
+		long jitMillis = jitMillis();
+		double seconds = windowNanos / 1e9;
+		out.printf("[%8.1fs] rounds/s %10.0f | orders/s %10.0f | fills/s %10.0f"
+				+ " | expired/s %10.0f | interest %3d | gc %3d (%5d ms)"
+				+ " | jit %5d ms | dropped events %d",
+				(System.nanoTime() - startTime) / 1e9,
+				window[EventRecorder.ROUND_COMPLETED] / seconds,
+				window[EventRecorder.ORDER_SUBMITTED] / seconds,
+				window[EventRecorder.FILL] / seconds,
+				window[EventRecorder.EXPIRY_BATCH] / seconds,
+				window[EventRecorder.INTEREST_APPLIED], gcCount - lastGcCount,
+				gcMillis - lastGcMillis, jitMillis - lastJitMillis, dropped);
+		out.println();
+		for (int i = 0; i < MAX_SLOW && slowDurations[i] > 0; i++) {
+			out.printf("    slow round %8d: %8.3f ms (interest %d, history %d,"
+					+ " statistics %d, expiry %d, agent %d ns)", slowRounds[i],
+					slowDurations[i] / 1e6, slowPhases[i][EngineProfiler.INTEREST],
+					slowPhases[i][EngineProfiler.HISTORY],
+					slowPhases[i][EngineProfiler.STATISTICS],
+					slowPhases[i][EngineProfiler.EXPIRY],
+					slowPhases[i][EngineProfiler.AGENT]);
+			out.println();
+		}
+		lastGcCount = gcCount;
+		lastGcMillis = gcMillis;
+		lastJitMillis = jitMillis;
+	}
+
+	// keep the event if it is one of the slowest rounds of the window
+	private void keepSlowRound(EventRecorder.Event e) {
+		int i = MAX_SLOW - 1;
+		if (e.getDuration() <= slowDurations[i]) return;
+		// shift the faster rounds down to make room
+		while (i > 0 && slowDurations[i - 1] < e.getDuration()) {
+			slowDurations[i] = slowDurations[i - 1];
+			slowRounds[i] = slowRounds[i - 1];
+			long[] tmp = slowPhases[i];
+			slowPhases[i] = slowPhases[i - 1];
+			slowPhases[i - 1] = tmp;
+			i--;
+		}
+		slowDurations[i] = e.getDuration();
+		slowRounds[i] = e.getRound();
+		for (int p = 0; p < EventRecorder.NUM_PHASES; p++) {
+			slowPhases[i][p] = e.getPhase(p);
+		}
+	}
+
+	// total number of garbage collections so far
+	private static long gcCount() {
+		long count = 0;
+		List<GarbageCollectorMXBean> gcs = ManagementFactory
+				.getGarbageCollectorMXBeans();
+		for (int i = 0; i < gcs.size(); i++) {
+			if (gcs.get(i).getCollectionCount() > 0) count += gcs.get(i)
+					.getCollectionCount();
+		}
+		return count;
+	}
+
+	// total time spent in garbage collection so far
+	private static long gcMillis() {
+		long millis = 0;
+		List<GarbageCollectorMXBean> gcs = ManagementFactory
+				.getGarbageCollectorMXBeans();
+		for (int i = 0; i < gcs.size(); i++) {
+			if (gcs.get(i).getCollectionTime() > 0) millis += gcs.get(i)
+					.getCollectionTime();
+		}
+		return millis;
+	}
+
+	// total time spent compiling so far, or 0 if the JVM doesn't say
+	private static long jitMillis() {
+		CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+		if (jit == null || !jit.isCompilationTimeMonitoringSupported()) return 0;
+		return jit.getTotalCompilationTime();
+	}
+}
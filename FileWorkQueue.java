@@ -0,0 +1,281 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * File Work Queue
+ * 
+ * A durable queue of sweep tasks kept in a directory, so any number of worker JVMs on the
+ * same host (or on hosts sharing the file system) can work through one sweep.  Each task is
+ * a SimulationConfig in its own properties file and moves between three directories:
+ * 
+ *   pending/  waiting to be run
+ *   leased/   claimed by a worker; the file's modification time is the lease heartbeat
+ *   done/     finished, with the results added to the config
+ * 
+ * Claiming a task is a rename from pending/ to leased/, which only one worker can win.  The
+ * file is touched before the rename (a rename keeps the modification time, and a stale one
+ * would look like an expired lease), and its leased name carries a token of the claim, so
+ * a worker only ever touches, finishes or gives back its own lease.  A worker keeps
+ * touching its leased file while it runs; a lease that hasn't been touched for the lease
+ * timeout belongs to a crashed worker and is moved back to pending/ by whoever notices
+ * first.  Results are written to a temporary file and renamed into done/, so a result is
+ * either complete or not there at all, and a sweep can be resumed after any failure by
+ * just starting workers again.
+ */
+import java.io.*;
+import java.util.*;
+
+public class FileWorkQueue {
+
+	private static final String	SUFFIX	= ".properties";
+
+	private File						pending;
+	private File						leased;
+	private File						done;
+	private File						manifest;
+	private long						leaseMillis;
+
+	// open (or create) the queue in dir; leases expire after leaseMillis without a heartbeat
+	public FileWorkQueue(File dir, long leaseMillis) {
+		this.pending = new File(dir, "pending");
+		this.leased = new File(dir, "leased");
+		this.done = new File(dir, "done");
+		this.manifest = new File(dir, "manifest" + SUFFIX);
+		this.leaseMillis = leaseMillis;
+		if (!pending.isDirectory() && !pending.mkdirs()) throw new RuntimeException(
+				"could not create " + pending);
+		if (!leased.isDirectory() && !leased.mkdirs()) throw new RuntimeException(
+				"could not create " + leased);
+		if (!done.isDirectory() && !done.mkdirs()) throw new RuntimeException(
+				"could not create " + done);
+	}
+
+	// get the lease timeout
+	public long getLeaseMillis() {
+		return leaseMillis;
+	}
+
+	// add the tasks of a sweep, unless the queue already holds a sweep (then it is being
+	// resumed and nothing is added); the columns are remembered for the results table
+	public boolean create(List<SimulationConfig> configs, List<String> columns)
+			throws IOException {
+		if (manifest.exists()) return false;
+		for (int i = 0; i < configs.size(); i++) {
+			File tmp = new File(pending, name(i) + ".tmp");
+			writeConfig(configs.get(i), null, tmp);
+			rename(tmp, new File(pending, name(i) + SUFFIX));
+		}
+		Properties p = new Properties();
+		p.setProperty("tasks", Integer.toString(configs.size()));
+		p.setProperty("columns", SweepResult.header(columns));
+		File tmp = new File(manifest.getPath() + ".tmp");
+		store(p, tmp);
+		rename(tmp, manifest);
+		return true;
+	}
+
+	// get the number of tasks in the sweep (0 if it hasn't been created yet)
+	public int getNumTasks() throws IOException {
+		if (!manifest.exists()) return 0;
+		return Integer.parseInt(load(manifest).getProperty("tasks"));
+	}
+
+	// get the columns of the results table
+	public List<String> getColumns() throws IOException {
+		List<String> columns = new ArrayList<String>();
+		if (!manifest.exists()) return columns;
+		for (String c : load(manifest).getProperty("columns").split(",")) {
+			if (c.trim().length() > 0) columns.add(c.trim());
+		}
+		return columns;
+	}
+
+	// get the number of finished tasks
+	public int getNumDone() {
+		return list(done).length;
+	}
+
+	// get the number of tasks currently claimed by workers
+	public int getNumLeased() {
+		return list(leased).length;
+	}
+
+	// get the number of tasks waiting to be run
+	public int getNumPending() {
+		return list(pending).length;
+	}
+
+	// claim the next pending task, or return null if there are none right now
+	public Task claim() throws IOException {
+		String[] names = list(pending);
+		Arrays.sort(names);
+		for (String n : names) {
+			File from = new File(pending, n);
+			File to = new File(leased, taskName(n).replace(SUFFIX, "."
+					+ UUID.randomUUID() + SUFFIX));
+			// start the lease fresh before it can be seen in leased/, then claim it (someone
+			// else may have claimed it first)
+			from.setLastModified(System.currentTimeMillis());
+			if (!from.renameTo(to)) continue;
+			// a re-leased task may have been finished by its old worker after all
+			if (new File(done, n).exists()) {
+				to.delete();
+				continue;
+			}
+			SimulationConfig config;
+			try {
+				config = readConfig(to);
+			} catch (FileNotFoundException e) {
+				continue;  // the lease was lost already
+			}
+			return new Task(n, to, config);
+		}
+		return null;
+	}
+
+	// move leases that haven't been renewed in time back to pending; returns how many
+	public int reclaimExpired() {
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (String n : list(leased)) {
+			File f = new File(leased, n);
+			long touched = f.lastModified();
+			if (touched == 0 || now - touched < leaseMillis) continue;
+			if (f.renameTo(new File(pending, taskName(n)))) count++;
+		}
+		return count;
+	}
+
+	// read every finished result, in task order
+	public List<SweepResult> getResults() throws IOException {
+		String[] names = list(done);
+		Arrays.sort(names);
+		List<SweepResult> results = new ArrayList<SweepResult>();
+		for (String n : names) {
+			Properties p = load(new File(done, n));
+			SimulationConfig c = toConfig(p);
+			results.add(new SweepResult(c, Double.parseDouble(p
+					.getProperty("result.spread")), Double.parseDouble(p
+					.getProperty("result.bids")), Double.parseDouble(p
+					.getProperty("result.asks")), Integer.parseInt(p
+					.getProperty("result.rounds")), Long.parseLong(p
+					.getProperty("result.nanos"))));
+		}
+		return results;
+	}
+
+	// the file name of the i-th task, padded so the names sort in task order
+	private static String name(int i) {
+		return String.format("%09d", i);
+	}
+
+	// the task file name of a leased file, without its claim token
+	private static String taskName(String leasedName) {
+		return leasedName.substring(0, leasedName.indexOf('.')) + SUFFIX;
+	}
+
+	// list the task files in a directory
+	private static String[] list(File dir) {
+		String[] names = dir.list(new FilenameFilter() {
+			public boolean accept(File d, String n) {
+				return n.endsWith(SUFFIX);
+			}
+		});
+		return (names == null) ? new String[0] : names;
+	}
+
+	// write a config (and a result, if there is one) to a file
+	private static void writeConfig(SimulationConfig c, SweepResult r, File f)
+			throws IOException {
+		Properties p = new Properties();
+		p.setProperty("model", c.getModel());
+		for (String n : c.getNames()) {
+			p.setProperty(n, c.get(n));
+		}
+		if (r != null) {
+			p.setProperty("result.spread", Double.toString(r.getAverageSpread()));
+			p.setProperty("result.bids", Double.toString(r.getAverageBids()));
+			p.setProperty("result.asks", Double.toString(r.getAverageAsks()));
+			p.setProperty("result.rounds", Integer.toString(r.getRounds()));
+			p.setProperty("result.nanos", Long.toString(r.getElapsedNanos()));
+		}
+		store(p, f);
+	}
+
+	// read the config part of a task file
+	private static SimulationConfig readConfig(File f) throws IOException {
+		return toConfig(load(f));
+	}
+
+	// drop the results from a task's properties and build its config
+	private static SimulationConfig toConfig(Properties p) {
+		Properties config = new Properties();
+		for (String n : p.stringPropertyNames()) {
+			if (!n.startsWith("result.")) config.setProperty(n, p.getProperty(n));
+		}
+		return SimulationConfig.fromProperties(config);
+	}
+
+	private static Properties load(File f) throws IOException {
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(f);
+		try {
+			p.load(in);
+		} finally {
+			in.close();
+		}
+		return p;
+	}
+
+	private static void store(Properties p, File f) throws IOException {
+		OutputStream out = new FileOutputStream(f);
+		try {
+			p.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void rename(File from, File to) throws IOException {
+		if (!from.renameTo(to)) throw new IOException("could not rename " + from
+				+ " to " + to);
+	}
+
+	// a task claimed by this worker
+	public class Task {
+		private String					name;
+		private File					file;  // the lease, named with this claim's token
+		private SimulationConfig	config;
+
+		private Task(String name, File file, SimulationConfig config) {
+			this.name = name;
+			this.file = file;
+			this.config = config;
+		}
+
+		// get the config to run
+		public SimulationConfig getConfig() {
+			return config;
+		}
+
+		// renew the lease on the task
+		public void heartbeat() {
+			file.setLastModified(System.currentTimeMillis());
+		}
+
+		// publish the result and give up the lease
+		public void complete(SweepResult result) throws IOException {
+			File tmp = new File(done, name + "." + System.nanoTime() + ".tmp");
+			writeConfig(config, result, tmp);
+			File target = new File(done, name);
+			// if the task was re-leased and finished elsewhere, the first result wins
+			if (target.exists() || !tmp.renameTo(target)) tmp.delete();
+			// only our own lease; if it expired it is gone or renamed, not someone else's
+			file.delete();
+		}
+
+		// give the task back without a result
+		public void release() {
+			file.renameTo(new File(pending, name));
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interest Accrual
+ * 
+ * Pays interest and dividends lazily.  A payment only records its rate and dividend (O(1)
+ * however many agents there are); each agent remembers how many payments it has settled
+ * and catches up on the rest the next time its money or shares are read or changed.
+ * Catching up replays the missed payments one at a time in the same order and with the
+ * same arithmetic as paying everyone at once (money * rate, then + shares * dividend), so
+ * the balances are exactly the same as with eager payment.
+ * 
+ * The accrual counts how many agents are waiting at each payment, so the payments every
+ * agent has settled are dropped and the history only spans the laggiest agent.  Object
+ * agents keep an Account, a compact population keeps one int per agent.
+ */
+
+public class InterestAccrual {
+
+	private double[]	rates;
+	private double[]	dividends;
+	private int[]		holders;  // holders[k - base]: agents that have settled k payments
+	private int			base;  // payment number of rates[0]
+	private int			epoch;  // number of payments made
+
+	public InterestAccrual() {
+		this.rates = new double[16];
+		this.dividends = new double[16];
+		this.holders = new int[17];
+		this.base = 0;
+		this.epoch = 0;
+	}
+
+	// pay interest (a multiplier) on money and a dividend per share to every agent
+	public void pay(double interestRate, double dividend) {
+		if (epoch - base == rates.length) {
+			// drop the payments everyone has settled, and grow if that doesn't free half
+			int first = 0;
+			while (first < epoch - base && holders[first] == 0) {
+				first++;
+			}
+			int live = epoch - base - first;
+			int length = (live * 2 > rates.length) ? rates.length * 2 : rates.length;
+			double[] r = new double[length];
+			double[] d = new double[length];
+			int[] h = new int[length + 1];
+			System.arraycopy(rates, first, r, 0, live);
+			System.arraycopy(dividends, first, d, 0, live);
+			System.arraycopy(holders, first, h, 0, live + 1);
+			rates = r;
+			dividends = d;
+			holders = h;
+			base += first;
+		}
+		rates[epoch - base] = interestRate;
+		dividends[epoch - base] = dividend;
+		epoch++;
+	}
+
+	// get the number of payments made so far
+	public int getEpoch() {
+		return epoch;
+	}
+
+	// get the number of payments still kept for agents that haven't settled them
+	public int getHistoryLength() {
+		return epoch - base;
+	}
+
+	// start an agent off with every payment so far settled, returns its epoch
+	public int join() {
+		holders[epoch - base]++;
+		return epoch;
+	}
+
+	// stop tracking an agent that had settled "from" payments
+	public void leave(int from) {
+		holders[from - base]--;
+	}
+
+	// catch agent i of a compact population up on the payments it has missed
+	public void settle(double[] money, int[] shares, int[] epochs, int i) {
+		int from = epochs[i];
+		if (from == epoch) return;
+		money[i] = replay(money[i], shares[i], from);
+		epochs[i] = moveUp(from);
+	}
+
+	// the money of an agent that has settled the first "from" payments, once it has been
+	// paid the rest (its shares can't have changed since, or it would have settled)
+	private double replay(double money, int shares, int from) {
+		for (int k = from - base; k < epoch - base; k++) {
+			money = money * rates[k];
+			money = money + shares * dividends[k];
+		}
+		return money;
+	}
+
+	// move an agent that had settled "from" payments up to the latest
+	private int moveUp(int from) {
+		holders[from - base]--;
+		holders[epoch - base]++;
+		return epoch;
+	}
+
+	/*
+	 * Account - one object agent's place in an accrual, so the agent only needs its money,
+	 * its shares and one of these
+	 */
+	public static class Account {
+
+		private InterestAccrual	accrual;  // pays interest lazily, null when paid eagerly
+		private int					epoch;  // payments of the accrual settled
+
+		// the agent's money after catching up on the payments made since it last settled
+		public double settle(double money, int shares) {
+			if (accrual == null || epoch == accrual.epoch) return money;
+			money = accrual.replay(money, shares, epoch);
+			epoch = accrual.moveUp(epoch);
+			return money;
+		}
+
+		// settle with the old accrual and have the new one (or none) pay from now on,
+		// returns the settled money
+		public double setAccrual(InterestAccrual next, double money, int shares) {
+			money = settle(money, shares);
+			if (accrual != null) accrual.leave(epoch);
+			accrual = next;
+			epoch = (next == null) ? 0 : next.join();
+			return money;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interface for Interest Bearing Agent
+ * 
+ * An agent that keeps its own money and shares, and so can be paid interest and
+ * dividends lazily through an InterestAccrual.  The views of a compact AgentPopulation
+ * aren't, the population is given its accrual as a whole.
+ */
+
+public interface InterestBearingAgent extends Agent {
+	// have interest and dividends paid through the given accrual from now on
+	void setInterestAccrual(InterestAccrual accrual);
+}
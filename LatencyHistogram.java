@@ -0,0 +1,120 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Latency Histogram
+ * 
+ * A fixed size log-linear histogram of nanosecond latencies in the style of an HDR histogram.
+ * Values below 128 get their own bucket, and above that every power of two is split into 64
+ * sub-buckets, so any recorded value is off by less than 1.6%.  Recording is a couple of
+ * shifts and an array increment, so it can sit in the hot path of the simulation.
+ */
+
+public class LatencyHistogram {
+
+	private static final int	SUB_BITS		= 7;
+	private static final int	SUB_COUNT	= 1 << SUB_BITS;  // 128 linear buckets at the bottom
+	private static final int	HALF_COUNT	= SUB_COUNT / 2;  // sub-buckets per power of two above that
+
+	private long[]					counts;
+	private long					totalCount;
+	private long					totalNanos;
+	private long					min;
+	private long					max;
+
+	public LatencyHistogram() {
+		this.counts = new long[SUB_COUNT + (63 - SUB_BITS + 1) * HALF_COUNT];
+		this.totalCount = 0;
+		this.totalNanos = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+	}
+
+	// record a single latency in nanoseconds
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		counts[indexOf(nanos)]++;
+		totalCount++;
+		totalNanos += nanos;
+		if (nanos < min) min = nanos;
+		if (nanos > max) max = nanos;
+	}
+
+	// add all of the counts in another histogram to this one
+	public void add(LatencyHistogram that) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += that.counts[i];
+		}
+		totalCount += that.totalCount;
+		totalNanos += that.totalNanos;
+		if (that.min < min) min = that.min;
+		if (that.max > max) max = that.max;
+	}
+
+	// forget everything recorded so far
+	public void reset() {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = 0;
+		}
+		totalCount = 0;
+		totalNanos = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	// get the number of recorded values
+	public long getCount() {
+		return totalCount;
+	}
+
+	// get the sum of all the recorded values
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	// get the smallest recorded value
+	public long getMin() {
+		return (totalCount == 0) ? 0 : min;
+	}
+
+	// get the largest recorded value
+	public long getMax() {
+		return max;
+	}
+
+	// get the mean of the recorded values
+	public double getMean() {
+		return (totalCount == 0) ? 0.0 : (double) totalNanos / totalCount;
+	}
+
+	// get the value at the given percentile (0 - 100)
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) return 0;
+		long target = (long) Math.ceil(percentile / 100.0 * totalCount);
+		if (target < 1) target = 1;
+
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			// report the highest value that would land in this bucket, capped by the real max
+			if (seen >= target) return Math.min(highestValueAt(i), max);
+		}
+		return max;
+	}
+
+	// find the bucket a value belongs in
+	private static int indexOf(long value) {
+		if (value < SUB_COUNT) return (int) value;
+		// shift the value down so it lands in [HALF_COUNT, SUB_COUNT)
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return SUB_COUNT + (shift - 1) * HALF_COUNT
+				+ (int) (value >>> shift) - HALF_COUNT;
+	}
+
+	// the largest value that would be recorded into the bucket at this index
+	private static long highestValueAt(int index) {
+		if (index < SUB_COUNT) return index;
+		int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+		long sub = (index - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -8,7 +8,7 @@
  */
 import java.util.*;
 
-public class LimitOrderBook {
+public class LimitOrderBook implements MarketQuotes {
 	private PriorityQueue<LimitOrder>	sellbook;  // contains limit sell orders ordered by lowest price first
 	private PriorityQueue<LimitOrder>	buybook;  // contains limit buy orders ordered by highest price first
 	private PriorityQueue<LimitOrder>	expbook;  // contains all limit orders ordered by expiration round
@@ -23,6 +23,10 @@ public class LimitOrderBook {
 	private static final boolean	BUY	= false;
 	
 	private boolean same;
+	
+	private EngineProfiler profiler; // optional latency instrumentation, null when off
+	private ArrayList<BookListener> listeners; // told about orders, trades and expirations
+	private ArrayList<BookChangeListener> changeListeners; // told about orders entering and leaving the books
 
 	public LimitOrderBook(boolean expirationOn) {
 		// ordered by lowest sell price first
@@ -42,6 +46,60 @@ public class LimitOrderBook {
 		this.transactionOccured = false;
 		
 		this.same = false;
+		this.profiler = null;
+		this.listeners = new ArrayList<BookListener>();
+		this.changeListeners = new ArrayList<BookChangeListener>();
+	}
+
+	// add a listener to be told about orders, trades and expirations in the book
+	public void addListener(BookListener listener) {
+		listeners.add(listener);
+	}
+
+	// stop telling a listener about activity in the book
+	public void removeListener(BookListener listener) {
+		listeners.remove(listener);
+	}
+
+	// add a listener to be told about every order entering or leaving the buy and sell books
+	public void addChangeListener(BookChangeListener listener) {
+		changeListeners.add(listener);
+	}
+
+	// stop telling a change listener about the books
+	public void removeChangeListener(BookChangeListener listener) {
+		changeListeners.remove(listener);
+	}
+
+	// hold cash and shares for limit orders while they rest in the book, so an order is
+	// refused at entry if its agent can't cover it and matching never fails a credit check
+	// (orders already in the book are reserved as they are when this is turned on)
+	public void setReservations(boolean on) {
+		ch.setReserving(on);
+		if (on) {
+			for (LimitOrder lo : buybook) ch.reserve(lo);
+			for (LimitOrder lo : sellbook) ch.reserve(lo);
+		}
+	}
+
+	// are cash and shares held for resting limit orders?
+	public boolean areReservationsOn() {
+		return ch.isReserving();
+	}
+
+	// get the money agent has held for its resting limit buy orders
+	public double getReservedMoney(Agent agent) {
+		return ch.getReservedMoney(agent);
+	}
+
+	// get the shares agent has held for its resting limit sell orders
+	public int getReservedShares(Agent agent) {
+		return ch.getReservedShares(agent);
+	}
+
+	// set the profiler used to time calls into the book (null turns it off)
+	public void setProfiler(EngineProfiler profiler) {
+		this.profiler = profiler;
 	}
 
 	// returns whether limit orders can expire or not
@@ -102,6 +160,13 @@ public class LimitOrderBook {
 		return lastTransactionPrice;
 	}
 	
+	// get the earliest expiration round of the orders in the book, or Integer.MAX_VALUE if
+	// nothing is due to expire
+	public int getNextExpiration() {
+		if (!limitOrdersExpire || expbook.peek() == null) return Integer.MAX_VALUE;
+		return expbook.peek().getExpiration();
+	}
+
 	// did a transaction occur in the last round?
 	public boolean transactionOccured() {
 		return transactionOccured;
@@ -176,6 +241,61 @@ public class LimitOrderBook {
 	// submits a limit buy order to the limit order book
 	// the order is from agent p and has size, price, and expiration round
 	public boolean submitLimitBuyOrder(int size, double price, int exp, Agent p) {
+		if (listeners.size() > 0) fireOrderSubmitted(p, true, false, size, price);
+		if (profiler == null) return limitBuyOrder(size, price, exp, p);
+		long start = System.nanoTime();
+		boolean success = limitBuyOrder(size, price, exp, p);
+		profiler.record(EngineProfiler.LIMIT_BUY, System.nanoTime() - start);
+		return success;
+	}
+
+	// submits a limit sell order to the limit order book
+	// the order is from agent p and has size, price, and expiration round
+	public boolean submitLimitSellOrder(int size, double price, int exp, Agent p) {
+		if (listeners.size() > 0) fireOrderSubmitted(p, true, true, size, price);
+		if (profiler == null) return limitSellOrder(size, price, exp, p);
+		long start = System.nanoTime();
+		boolean success = limitSellOrder(size, price, exp, p);
+		profiler.record(EngineProfiler.LIMIT_SELL, System.nanoTime() - start);
+		return success;
+	}
+
+	// submits and handles a market buy order
+	// immediatly buys or sells *size* amounts of shares for agent *buyer*
+	// at the lowest/highest price available in the limit order book
+	public boolean submitMarketOrder(boolean sell, int size, Agent agent1) {
+		if (listeners.size() > 0) fireOrderSubmitted(agent1, false, sell, size, 0);
+		if (profiler == null) return marketOrder(sell, size, agent1);
+		long start = System.nanoTime();
+		boolean success = marketOrder(sell, size, agent1);
+		profiler.record(EngineProfiler.MARKET_ORDER, System.nanoTime() - start);
+		return success;
+	}
+
+	// let the listeners know an order was submitted
+	private void fireOrderSubmitted(Agent agent, boolean isLimit,
+			boolean isSell, int size, double price) {
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).orderSubmitted(agent, isLimit, isSell, size, price);
+		}
+	}
+
+	// let the change listeners know an order entered the buy or sell book
+	private void fireOrderAdded(LimitOrder order) {
+		for (int i = 0; i < changeListeners.size(); i++) {
+			changeListeners.get(i).orderAdded(order);
+		}
+	}
+
+	// let the change listeners know an order left the buy or sell book
+	private void fireOrderRemoved(LimitOrder order) {
+		for (int i = 0; i < changeListeners.size(); i++) {
+			changeListeners.get(i).orderRemoved(order);
+		}
+	}
+
+	// adds a limit buy order to the book, or crosses it if it is marketable
+	private boolean limitBuyOrder(int size, double price, int exp, Agent p) {
 		if (price < 0) return false;
 		boolean success;
 
@@ -183,22 +303,29 @@ public class LimitOrderBook {
 			// if the buying price of this order is above the lowest selling price, buy it at that price instead
 			LimitOrder lowestSell = sellbook.peek();
 			if (price >= lowestSell.getPrice()) {
-				return submitMarketOrder(false, size, p);
+				return marketOrder(false, size, p);
 			}
 		}
 
+		// with reservations the agent has to be able to cover the order while it rests
+		if (ch.isReserving() && !ch.checkBuyer(p, size, price)) {
+			transactionOccured = false;
+			return false;
+		}
+
 		// add the limit order to the buybook and expiration book
 		LimitOrder newOrder = new LimitOrder(size, price, BUY, exp, p);
 		success = buybook.add(newOrder);
+		if (ch.isReserving()) ch.reserve(newOrder);
+		if (changeListeners.size() > 0) fireOrderAdded(newOrder);
 		if (limitOrdersExpire) success = success && expbook.add(newOrder);
 		transactionOccured = false;
 
 		return success;
 	}
 
-	// submits a limit sell order to the limit order book
-	// the order is from agent p and has size, price, and expiration round
-	public boolean submitLimitSellOrder(int size, double price, int exp, Agent p) {
+	// adds a limit sell order to the book, or crosses it if it is marketable
+	private boolean limitSellOrder(int size, double price, int exp, Agent p) {
 		if (price < 0) return false;
 		boolean success;
 
@@ -206,23 +333,29 @@ public class LimitOrderBook {
 			// if the selling price of this order is below the highest selling price, sell it at that price instead
 			LimitOrder highestBuy = buybook.peek();
 			if (price <= highestBuy.getPrice()) {
-				return submitMarketOrder(true, size, p);
+				return marketOrder(true, size, p);
 			}
 		}
 		
+		// with reservations the agent has to be able to cover the order while it rests
+		if (ch.isReserving() && !ch.checkSeller(p, size)) {
+			transactionOccured = false;
+			return false;
+		}
+
 	// add the limit order to the sellbook and expiration book
 		LimitOrder newOrder = new LimitOrder(size, price, SELL, exp, p);
 		success = sellbook.add(newOrder);
+		if (ch.isReserving()) ch.reserve(newOrder);
+		if (changeListeners.size() > 0) fireOrderAdded(newOrder);
 		if (limitOrdersExpire) success = success && expbook.add(newOrder);
 		transactionOccured = false;
 		
 		return success;
 	}
 
-	// submits and handles a market buy order
-	// immediatly buys or sells *size* amounts of shares for agent *buyer*
-	// at the lowest/highest price available in the limit order book
-	public boolean submitMarketOrder(boolean sell, int size, Agent agent1) {
+	// matches a market order against the opposite side of the book
+	private boolean marketOrder(boolean sell, int size, Agent agent1) {
 		boolean s = true;
 
 		LimitOrder lo = null;
@@ -241,8 +374,23 @@ public class LimitOrderBook {
 		
 		// while there are still more shares to be bought
 		while (size > 0 && s) {
+			// with reservations the resting orders are always covered, so only the
+			// submitter is checked, before anything leaves the book
+			if (ch.isReserving() && book.peek() != null) {
+				LimitOrder top = book.peek();
+				int fill = Math.min(size, top.getSize());
+				if (sell ? !ch.checkSeller(seller, fill) : !ch.checkBuyer(buyer,
+						fill, top.getPrice())) {
+					lo = null;
+					s = false;
+					break;
+				}
+			}
+
 			// get the top limit order in the book
 			lo = book.poll();
+			if (lo != null && changeListeners.size() > 0) fireOrderRemoved(lo);
+			if (lo != null && ch.isReserving()) ch.release(lo);
 
 			// if no limit orders left, the trade was not finished completely, so
 			// we return false
@@ -292,6 +440,8 @@ public class LimitOrderBook {
 						// replace limit order with new size
 						lo.setSize(lo.getSize() - size);
 						book.add(lo);
+						if (ch.isReserving()) ch.reserve(lo);
+						if (changeListeners.size() > 0) fireOrderAdded(lo);
 						if (limitOrdersExpire) expbook.add(lo);
 						size = 0;
 					} else if (sell) continue;
@@ -321,6 +471,8 @@ public class LimitOrderBook {
 		// back onto book
 		if (s == false && lo != null) {
 			book.add(lo);
+			if (ch.isReserving()) ch.reserve(lo);
+			if (changeListeners.size() > 0) fireOrderAdded(lo);
 		}
 		
 		return s;
@@ -335,38 +487,111 @@ public class LimitOrderBook {
 		if (top == null) return;
 		
 		// keep clearing the orders until there aren'y anymore that are expired
-		while (top.getExpiration() <= round && top != null) {
+		int expired = 0;
+		while (top != null && top.getExpiration() <= round) {
 			expbook.remove();
-			if (top.getType() == true) sellbook.remove(top);
-			else buybook.remove(top);
+			boolean removed;
+			if (top.getType() == true) removed = sellbook.remove(top);
+			else removed = buybook.remove(top);
+			// orders thrown away during matching are only left in the expiration book
+			if (removed && ch.isReserving()) ch.release(top);
+			if (removed && changeListeners.size() > 0) fireOrderRemoved(top);
+			expired++;
 			top = expbook.peek();
-			if (top == null) return;
+		}
+		
+		// let the listeners know how many orders expired this round
+		if (expired > 0) {
+			for (int i = 0; i < listeners.size(); i++) {
+				listeners.get(i).ordersExpired(round, expired);
+			}
 		}
 	}
 
 	// clear the limit order book
 	private void clearBooks() {
+		if (changeListeners.size() > 0) {
+			for (LimitOrder lo : getSellBookAsArray()) fireOrderRemoved(lo);
+			for (LimitOrder lo : getBuyBookAsArray()) fireOrderRemoved(lo);
+		}
 		sellbook.clear();
 		buybook.clear();
 		expbook.clear();
+		ch.clearReservations();
 	}
 
 	// the ClearingHouse makes sure the buyer has the necessary funds
 	// and that the seller has the necessary shares to make the transaction
+	// with reservations on it also holds the cash of every resting buy order and the shares
+	// of every resting sell order, and only what isn't held counts in the checks
 	private class ClearingHouse {
 
-		
+		private boolean								reserving;
+		private HashMap<Agent, Reservation>	reservations;
+
 		public ClearingHouse() {
+			this.reserving = false;
+			this.reservations = new HashMap<Agent, Reservation>();
+		}
+
+		public boolean isReserving() {
+			return reserving;
+		}
+
+		public void setReserving(boolean on) {
+			reserving = on;
+			reservations.clear();
 		}
 
 		// check that the buyer has the necessary funds
 		public boolean checkBuyer(Agent buyer, int size, double price) {
-			return buyer.getMoney() - (size * price) >= 0;
+			if (!reserving) return buyer.getMoney() - (size * price) >= 0;
+			return buyer.getMoney() - getReservedMoney(buyer) - (size * price) >= 0;
 		}
 
 		// check that the seller has the necessary shares
 		public boolean checkSeller(Agent seller, int size) {
-			return seller.getShares() - size >= 0;
+			if (!reserving) return seller.getShares() - size >= 0;
+			return seller.getShares() - getReservedShares(seller) - size >= 0;
+		}
+
+		public double getReservedMoney(Agent agent) {
+			Reservation r = reservations.get(agent);
+			return (r == null) ? 0.0 : r.money;
+		}
+
+		public int getReservedShares(Agent agent) {
+			Reservation r = reservations.get(agent);
+			return (r == null) ? 0 : r.shares;
+		}
+
+		// hold what a limit order needs while it rests in the book
+		public void reserve(LimitOrder lo) {
+			Reservation r = reservations.get(lo.getPlayer());
+			if (r == null) {
+				r = new Reservation();
+				reservations.put(lo.getPlayer(), r);
+			}
+			if (lo.getType() == SELL) r.shares += lo.getSize();
+			else r.money += lo.getSize() * lo.getPrice();
+			r.orders++;
+		}
+
+		// let go of what a limit order held, now it has left the book
+		public void release(LimitOrder lo) {
+			Reservation r = reservations.get(lo.getPlayer());
+			if (r == null) return;
+			// drop the entry with the agent's last order, so rounding can't build up
+			if (--r.orders == 0) {
+				reservations.remove(lo.getPlayer());
+				return;
+			}
+			if (lo.getType() == SELL) r.shares -= lo.getSize();
+			else r.money -= lo.getSize() * lo.getPrice();
+		}
+
+		public void clearReservations() {
+			reservations.clear();
 		}
 
 		// only call this once you've checked the buyer AND the seller
@@ -380,9 +605,20 @@ public class LimitOrderBook {
 			buyer.setMoney(buyer.getMoney() - cost);
 			lastTransactionPrice = price;
 			transactionOccured = true;
+			
+			for (int i = 0; i < listeners.size(); i++) {
+				listeners.get(i).tradeCleared(buyer, seller, size, price);
+			}
 		}
 	}
 
+	// what an agent has held for its resting limit orders
+	private static class Reservation {
+		double	money;
+		int		shares;
+		int		orders;
+	}
+
 	// main for testing functionality and corner cases of limit order book
 	public static void main(String[] args) {
 		LimitOrderBook lob = new LimitOrderBook(true);
@@ -543,6 +779,75 @@ public class LimitOrderBook {
 		lob.print(1);
 		System.out.println("Sellbook should be clear, bb and eb have one bid");
 
+		// test reservations
+		System.out.println("-----------------------------------------");
+		System.out.println("Test 7a: reservations - bids held against money");
+		lob = new LimitOrderBook(true);
+		lob.setReservations(true);
+		agent1 = new PracticeAgent(2.00, 1, lob, 1);
+		agent2 = new PracticeAgent(100, 100, lob, 2);
+		success = lob.submitLimitBuyOrder(1, 1.50, 10, agent1);
+		success = success && !lob.submitLimitBuyOrder(1, 1.00, 10, agent1);
+		System.out.println("Successful? " + success);
+		System.out.println("Reserved money = " + lob.getReservedMoney(agent1));
+		System.out.println("Should be true, only the first bid rests, 1.5 held");
+
+		System.out.println("Test 7b: reservations - asks held against shares");
+		success = lob.submitLimitSellOrder(1, 3.00, 10, agent1);
+		success = success && !lob.submitLimitSellOrder(1, 3.10, 10, agent1);
+		System.out.println("Successful? " + success);
+		System.out.println("Reserved shares = " + lob.getReservedShares(agent1));
+		System.out.println("Should be true, only the first ask rests, 1 held");
+
+		System.out.println("Test 7c: reservations - fill releases the hold");
+		success = lob.submitMarketOrder(SELL, 1, agent2);
+		System.out.println("Successful? " + success);
+		System.out.println("Reserved money = " + lob.getReservedMoney(agent1));
+		System.out.println("Should be true and 0.0 held, agent1 bought a share");
+
+		System.out.println("Test 7d: reservations - submitter checked before matching");
+		agent2 = new PracticeAgent(0, 0, lob, 2);
+		success = !lob.submitMarketOrder(BUY, 1, agent2);
+		System.out.println("Successful? " + success);
+		lob.printSellBook();
+		System.out.println("Should be true, and the ask still rests");
+
+		System.out.println("Test 7e: reservations - expiry releases the hold");
+		lob.clearExpiredBids(10);
+		System.out.println("Reserved shares = " + lob.getReservedShares(agent1));
+		System.out.println("Should be 0");
+
+		// test the trading ledger
+		System.out.println("-----------------------------------------");
+		System.out.println("Test 8a: ledger - fills booked for both sides");
+		lob = new LimitOrderBook(true);
+		TradingLedger ledger = new TradingLedger();
+		lob.addListener(ledger);
+		agent1 = new PracticeAgent(100, 10, lob, 1);
+		agent2 = new PracticeAgent(100, 10, lob, 2);
+		lob.submitLimitSellOrder(2, 1.00, 10, agent2);
+		success = lob.submitMarketOrder(BUY, 2, agent1);
+		success = success && ledger.getPosition(agent1) == 2
+				&& ledger.getPosition(agent2) == -2
+				&& ledger.getInventory(agent1) == agent1.getShares();
+		System.out.println("Successful? " + success);
+		System.out.println("Should be true, agent1 is long 2 and agent2 short 2");
+
+		System.out.println("Test 8b: ledger - realized PnL at the average cost");
+		lob.submitLimitSellOrder(1, 1.50, 10, agent1);
+		lob.submitMarketOrder(BUY, 1, agent2);
+		System.out.printf("Position = %d, realized = %.2f", ledger
+				.getPosition(agent1), ledger.getRealizedPnL(agent1));
+		System.out.println();
+		System.out.println("Should be 1 and 0.50");
+
+		System.out.println("Test 8c: ledger - drawdown from the last fill to the query");
+		ledger.markToMarket(0.50, 1);
+		System.out.printf("Unrealized = %.2f, drawdown = %.2f", ledger
+				.getUnrealizedPnL(agent1), ledger.getMaxDrawdown(agent1));
+		System.out.println();
+		System.out.println("Should be -0.50 and 1.00, the peak was at the 1.50 fill");
+
 		// corner cases?
 
 	}
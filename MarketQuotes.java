@@ -0,0 +1,32 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interface for MarketQuotes
+ * 
+ * The prices and book sizes of a market as they stand between two rounds.  A
+ * LimitOrderBook provides them, and so does ZeroIntelligenceSimulation, which has no
+ * LimitOrderBook, so anything that only reads the quotes works with every engine.
+ */
+
+public interface MarketQuotes {
+	// get the best (lowest) asking price, or -1 if there are no asks
+	double getBestAsk();
+
+	// get the best (highest) bidding price, or -1 if there are no bids
+	double getBestBid();
+
+	// get the market spread, or -1 if either side is empty
+	double getMarketSpread();
+
+	// get the midpoint price, or -1 if either side is empty
+	double getMidpointPrice();
+
+	// get the number of orders in the buy book
+	int getBuyBookSize();
+
+	// get the number of orders in the sell book
+	int getSellBookSize();
+
+	// get the price of the last trade (0 before the first)
+	double getLastTransactionPrice();
+}
@@ -0,0 +1,44 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interface for MarketSimulation
+ * 
+ * The part of a simulation that steps it and reads its market: rounds, quotes, averages
+ * and round listeners.  Every engine provides it, including ZeroIntelligenceSimulation,
+ * which has no LimitOrderBook and no user; DAS adds the book, the agents and the user.
+ */
+
+public interface MarketSimulation {
+	// get the prices and book sizes of the market
+	MarketQuotes getQuotes();
+
+	// get the total number of rounds
+	int getNumRounds();
+
+	// get the current round
+	int getCurrentRound();
+
+	// process the next bid
+	boolean nextBid();
+
+	// is the simulation done?
+	boolean isDone();
+
+	// get the average spread over the rounds processed so far
+	double getAverageSpread();
+
+	// get the average size of the buy book over the rounds processed so far
+	double getAverageBids();
+
+	// get the average size of the sell book over the rounds processed so far
+	double getAverageAsks();
+
+	// print the average spread with different options
+	void printAverageSpread(int i);
+
+	// set the profiler that times the phases of each round (null turns it off)
+	void setProfiler(EngineProfiler profiler);
+
+	// add a listener to be called at the end of every round
+	void addRoundListener(RoundListener listener);
+}
@@ -0,0 +1,59 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Metrics Registry
+ * 
+ * Registers SimulationMetrics with the platform MBean server under the
+ * "DoubleAuction:type=Simulation,name=..." object names, so that every simulation (or
+ * sweep worker) in a JVM shows up in jconsole / VisualVM / any JMX client.
+ */
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class MetricsRegistry {
+
+	private static final String	DOMAIN	= "DoubleAuction";
+
+	private MetricsRegistry() {
+	}
+
+	// get the object name used for the metrics with the given name
+	public static ObjectName objectName(String name) {
+		try {
+			return new ObjectName(DOMAIN + ":type=Simulation,name="
+					+ ObjectName.quote(name));
+		} catch (Exception e) {
+			throw new RuntimeException("bad metrics name: " + name, e);
+		}
+	}
+
+	// register metrics with the platform MBean server, replacing any with the same name
+	public static SimulationMetrics register(String name, SimulationMetrics metrics) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName on = objectName(name);
+		try {
+			if (server.isRegistered(on)) server.unregisterMBean(on);
+			server.registerMBean(metrics, on);
+		} catch (Exception e) {
+			throw new RuntimeException("could not register metrics " + name, e);
+		}
+		return metrics;
+	}
+
+	// create and register a new set of metrics
+	public static SimulationMetrics register(String name) {
+		return register(name, new SimulationMetrics());
+	}
+
+	// remove metrics from the platform MBean server
+	public static void unregister(String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName on = objectName(name);
+		try {
+			if (server.isRegistered(on)) server.unregisterMBean(on);
+		} catch (Exception e) {
+			throw new RuntimeException("could not unregister metrics " + name, e);
+		}
+	}
+}
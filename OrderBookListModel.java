@@ -0,0 +1,113 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * OrderBookListModel class - implements BookChangeListener
+ * A list model of one side of a LimitOrderBook for the animator.  It keeps its own copy of
+ * the side sorted best price first in an ArrayList, so getElementAt is a plain index, and
+ * it is kept up to date from the book's change notifications: an order entering the book
+ * is binary searched into place and fires intervalAdded for its row, an order leaving
+ * fires intervalRemoved for its row.  Nothing is copied or sorted again on a refresh, so
+ * the JList only repaints the rows that changed (give the JList a fixed cell size so it
+ * doesn't measure every row either).
+ * 
+ * The events go out on the thread that changes the book, so the book has to be stepped on
+ * the event dispatch thread while the model is attached.
+ */
+
+import java.util.*;
+import javax.swing.*;
+
+@SuppressWarnings("serial")
+public class OrderBookListModel extends AbstractListModel implements
+		BookChangeListener {
+
+	private LimitOrderBook			lob;
+	private boolean					sell;  // which side: SELL = true; BUY = false
+	private ArrayList<LimitOrder>	orders;  // best price first
+
+	// a model of the sell (sell = true) or buy side of lob, attached to it
+	public OrderBookListModel(LimitOrderBook lob, boolean sell) {
+		this.lob = lob;
+		this.sell = sell;
+		LimitOrder[] side = sell ? lob.getSellBookAsArray() : lob
+				.getBuyBookAsArray();
+		this.orders = new ArrayList<LimitOrder>(Math.max(16, 2 * side.length));
+		orders.addAll(Arrays.asList(side));
+		lob.addChangeListener(this);
+	}
+
+	// stop following the book
+	public void detach() {
+		lob.removeChangeListener(this);
+	}
+
+	// ListModel methods
+	public int getSize() {
+		return orders.size();
+	}
+
+	public Object getElementAt(int index) {
+		return orders.get(index);
+	}
+
+	// get the order at index (0 is the best price)
+	public LimitOrder getOrder(int index) {
+		return orders.get(index);
+	}
+
+	// BookChangeListener methods
+	public void orderAdded(LimitOrder order) {
+		if (order.getType() != sell) return;
+		// after the orders of the same price, as they were there first
+		int index = upperBound(order.getPrice());
+		orders.add(index, order);
+		fireIntervalAdded(this, index, index);
+	}
+
+	public void orderRemoved(LimitOrder order) {
+		if (order.getType() != sell) return;
+		int index = indexOf(order);
+		if (index < 0) return;
+		orders.remove(index);
+		fireIntervalRemoved(this, index, index);
+	}
+
+	// get the row of order, or -1 if it isn't in the model
+	public int indexOf(LimitOrder order) {
+		double price = order.getPrice();
+		for (int i = lowerBound(price); i < orders.size()
+				&& orders.get(i).getPrice() == price; i++) {
+			if (orders.get(i) == order) return i;
+		}
+		return -1;
+	}
+
+	// does price come before (is it better than) other on this side?
+	private boolean better(double price, double other) {
+		return sell ? price < other : price > other;
+	}
+
+	// the first row whose price is not better than price
+	private int lowerBound(double price) {
+		int lo = 0;
+		int hi = orders.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (better(orders.get(mid).getPrice(), price)) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	// the first row whose price is worse than price
+	private int upperBound(double price) {
+		int lo = 0;
+		int hi = orders.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (better(price, orders.get(mid).getPrice())) hi = mid;
+			else lo = mid + 1;
+		}
+		return lo;
+	}
+}
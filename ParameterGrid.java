@@ -0,0 +1,106 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Parameter Grid
+ * 
+ * A base SimulationConfig plus a list of axes, each naming a parameter and the values it
+ * takes.  The grid is every combination of the axes (the last axis changes fastest), and
+ * every point gets its own seed derived from the master seed and its index, so the points
+ * are independent but the whole sweep can be reproduced.
+ */
+import java.util.*;
+
+public class ParameterGrid {
+
+	private SimulationConfig	base;
+	private List<String>			names;
+	private List<String[]>		axes;
+	private long					masterSeed;
+
+	public ParameterGrid(SimulationConfig base) {
+		this.base = base;
+		this.names = new ArrayList<String>();
+		this.axes = new ArrayList<String[]>();
+		this.masterSeed = new SimRandom().nextLong();
+	}
+
+	// add an axis with the given values
+	public ParameterGrid add(String name, String... values) {
+		if (!base.has(name)) throw new IllegalArgumentException("no parameter "
+				+ name + " for model " + base.getModel());
+		names.add(name);
+		axes.add(values);
+		return this;
+	}
+
+	// add an axis stepping from "from" to "to" (inclusive); the values are computed from
+	// their index so rounding doesn't build up along the axis
+	public ParameterGrid range(String name, double from, double to, double step) {
+		int n = (int) Math.floor((to - from) / step + 1e-9) + 1;
+		String[] values = new String[n];
+		for (int i = 0; i < n; i++) {
+			// round away the noise of i * step, eg. 0.30000000000000004
+			double v = from + i * step;
+			values[i] = Double.toString(Math.round(v * 1e9) / 1e9);
+		}
+		return add(name, values);
+	}
+
+	// add an axis of whole numbers stepping from "from" to "to" (inclusive)
+	public ParameterGrid range(String name, int from, int to, int step) {
+		int n = (to - from) / step + 1;
+		String[] values = new String[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = Integer.toString(from + i * step);
+		}
+		return add(name, values);
+	}
+
+	// set the seed every point's seed is derived from
+	public ParameterGrid setMasterSeed(long seed) {
+		this.masterSeed = seed;
+		return this;
+	}
+
+	// get the seed every point's seed is derived from
+	public long getMasterSeed() {
+		return masterSeed;
+	}
+
+	// get the names of the axes
+	public List<String> getAxes() {
+		return Collections.unmodifiableList(names);
+	}
+
+	// get the number of points in the grid
+	public int size() {
+		int n = 1;
+		for (int i = 0; i < axes.size(); i++) {
+			n *= axes.get(i).length;
+		}
+		return n;
+	}
+
+	// get the config of every point in the grid
+	public List<SimulationConfig> getConfigs() {
+		int n = size();
+		List<SimulationConfig> configs = new ArrayList<SimulationConfig>(n);
+		for (int k = 0; k < n; k++) {
+			SimulationConfig c = base.copy();
+			int rest = k;
+			for (int a = axes.size() - 1; a >= 0; a--) {
+				String[] values = axes.get(a);
+				c.set(names.get(a), values[rest % values.length]);
+				rest /= values.length;
+			}
+			c.set("seed", Long.toString(deriveSeed(masterSeed, k)));
+			configs.add(c);
+		}
+		return configs;
+	}
+
+	// derive the seed of the point at index from the master seed
+	public static long deriveSeed(long master, long index) {
+		return SimRandom.seedFor(master, index);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Population Agent - implements Agent
+ * A lightweight view of one agent of an AgentPopulation.  It holds no state of its own, so
+ * the limit order book, clearing house and listeners can work with compact agents exactly
+ * as they do with the object agents.
+ */
+
+public class PopulationAgent implements Agent {
+
+	private AgentPopulation	population;
+	private int					index;
+
+	PopulationAgent(AgentPopulation population, int index) {
+		this.population = population;
+		this.index = index;
+	}
+
+	// get the index of this agent in its population
+	public int getIndex() {
+		return index;
+	}
+
+	// compare the two agent IDs for sorting purposes, returns 0 if equal
+	public int compareTo(Agent that) {
+		return this.getPID() - that.getPID();
+	}
+
+	public int getType() {
+		return population.getType(index);
+	}
+
+	public double getMoney() {
+		return population.getMoney(index);
+	}
+
+	public boolean setMoney(double newMoney) {
+		return population.setMoney(index, newMoney);
+	}
+
+	public int getShares() {
+		return population.getShares(index);
+	}
+
+	public boolean setShares(int newShares) {
+		return population.setShares(index, newShares);
+	}
+
+	public int getTradesCompleted() {
+		return population.getTradesCompleted(index);
+	}
+
+	public int getPID() {
+		return population.getPID(index);
+	}
+
+	public boolean submitOrder(int round) {
+		return population.submitOrder(index, round);
+	}
+
+	public boolean submitOrder(boolean isLimit, boolean isSell, int size,
+			double price, int expiration) {
+		return population.submitOrder(index, isLimit, isSell, size, price,
+				expiration);
+	}
+
+	public void printFinalData(double finalPrice) {
+		double money = getMoney();
+		int shares = getShares();
+		System.out.printf("%3d, %2d, %8.2f, %5d, %8.2f", getPID(), getType(),
+				money, shares, money + (shares * finalPrice));
+		System.out.println();
+	}
+}
@@ -7,7 +7,7 @@
  */
 import java.util.*;
 
-public class PracticeAgent implements Agent, Comparable<Agent> {
+public class PracticeAgent implements InterestBearingAgent, Comparable<Agent> {
 	private double				money;
 	private int					shares;
 	private LimitOrderBook	lob;
@@ -18,6 +18,7 @@ public class PracticeAgent implements Agent, Comparable<Agent> {
 	private double				interval;
 	private int					type	= 0;
 	private int					tradesCompleted;
+	private InterestAccrual.Account	account	= new InterestAccrual.Account();  // paid lazily
 	private int					exp;
 	
 	private int fundPrice;
@@ -26,11 +27,20 @@ public class PracticeAgent implements Agent, Comparable<Agent> {
 								LimitOrderBook limitOrderBook, int playerid,
 								double limitOrderProb, double sellProb,
 								double interval, int exp) {
+		this(startingmoney, startingshares, limitOrderBook, playerid,
+				limitOrderProb, sellProb, interval, exp, new SimRandom());
+	}
+
+	// same as above, but draws its decisions from the given random number generator
+	public PracticeAgent(double startingmoney, int startingshares,
+								LimitOrderBook limitOrderBook, int playerid,
+								double limitOrderProb, double sellProb,
+								double interval, int exp, Random random) {
 		this.money = startingmoney;
 		this.shares = startingshares;
 		this.lob = limitOrderBook;
 		this.pid = playerid;
-		this.random = new Random();
+		this.random = random;
 		this.a = limitOrderProb;
 		this.b = sellProb;
 		this.interval = interval;
@@ -55,20 +65,24 @@ public class PracticeAgent implements Agent, Comparable<Agent> {
 	}
 
 	public double getMoney() {
+		settle();
 		return money;
 	}
 
 	public boolean setMoney(double newMoney) {
+		settle();
 		if (newMoney < 0) return false;
 		money = newMoney;
 		return true;
 	}
 
 	public int getShares() {
+		settle();
 		return shares;
 	}
 
 	public boolean setShares(int newShares) {
+		settle();
 		if (shares < 0) return false;
 		shares = newShares;
 		return true;
@@ -139,7 +153,18 @@ public class PracticeAgent implements Agent, Comparable<Agent> {
 		return success;
 	}
 
+	// have interest and dividends paid through the given accrual from now on
+	public void setInterestAccrual(InterestAccrual accrual) {
+		money = account.setAccrual(accrual, money, shares);
+	}
+
+	// catch up on the interest and dividends paid since this agent last settled
+	private void settle() {
+		money = account.settle(money, shares);
+	}
+
 	public void printFinalData(double finalPrice) {
+		settle();
 		System.out.printf("%3d, %2d, %8.2f, %5d, %8.2f", pid, type, money,
 				shares, money + (shares * finalPrice));
 		System.out.println();
@@ -0,0 +1,195 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * PriceChartPanel class - implements RoundListener
+ * A live chart of the midpoint price, the last trade price and the market spread over the
+ * whole run, for the animator.  Every round adds the book's prices to a DownsampledSeries
+ * per line (fixed memory, amortized O(1)), and sample() turns each series into at most one
+ * point per pixel of the plot with LTTB, so drawing a frame costs the same after ten rounds
+ * or ten million.  The prices are drawn in the top of the panel and the spread below them.
+ * 
+ * roundCompleted and sample must run on the thread stepping the simulation; sample
+ * publishes immutable lines through a volatile field, which is all paintComponent reads,
+ * so the simulation can run on another thread while the chart repaints.
+ */
+
+import java.awt.*;
+import javax.swing.*;
+
+@SuppressWarnings("serial")
+public class PriceChartPanel extends JPanel implements RoundListener {
+
+	private static final int		BUCKETS		= 8192;
+	private static final int		MARGIN		= 40;  // room for the axis labels
+	private static final Color		MIDPOINT_COLOR	= Color.BLUE;
+	private static final Color		TRADE_COLOR		= Color.GRAY;
+	private static final Color		SPREAD_COLOR	= Color.RED;
+
+	private DownsampledSeries		midpoint;
+	private DownsampledSeries		lastTrade;
+	private DownsampledSeries		spread;
+	private int							lastRound;
+	private long						lastSample;
+	private long						samplePeriod;  // nanoseconds between samples in update
+	private double[]					sampleX;
+	private double[]					sampleY;
+
+	private volatile int				plotWidth;
+	private volatile Lines			lines;
+
+	public PriceChartPanel(int fps) {
+		this.midpoint = new DownsampledSeries(BUCKETS);
+		this.lastTrade = new DownsampledSeries(BUCKETS);
+		this.spread = new DownsampledSeries(BUCKETS);
+		this.samplePeriod = 1000000000L / fps;
+		this.sampleX = new double[2 * BUCKETS];
+		this.sampleY = new double[2 * BUCKETS];
+		this.plotWidth = 400;
+		this.lines = new Lines();
+		setPreferredSize(new Dimension(400 + MARGIN, 400));
+		setBackground(Color.WHITE);
+	}
+
+	// start charting sim
+	public void attach(MarketSimulation sim) {
+		sim.addRoundListener(this);
+	}
+
+	// RoundListener methods
+	public void roundCompleted(MarketSimulation sim, int round) {
+		MarketQuotes lob = sim.getQuotes();
+		double mid = lob.getMidpointPrice();
+		if (mid >= 0) midpoint.add(round, mid);
+		double last = lob.getLastTransactionPrice();
+		if (last > 0) lastTrade.add(round, last);
+		double s = lob.getMarketSpread();
+		if (s >= 0) spread.add(round, s);
+		lastRound = round;
+	}
+
+	public void interestApplied(MarketSimulation sim, int round, double interestRate,
+			double dividend) {
+	}
+
+	// sample the lines again if a frame has passed since the last time, and repaint;
+	// returns whether it did
+	public boolean update() {
+		long now = System.nanoTime();
+		if (now - lastSample < samplePeriod) return false;
+		sample();
+		repaint();
+		return true;
+	}
+
+	// downsample every series to the width of the plot and publish the lines
+	public void sample() {
+		lastSample = System.nanoTime();
+		int threshold = Math.max(3, plotWidth);
+		Lines l = new Lines();
+		l.rounds = Math.max(1, lastRound);
+		int n = midpoint.sample(threshold, sampleX, sampleY);
+		l.midX = copy(sampleX, n);
+		l.midY = copy(sampleY, n);
+		n = lastTrade.sample(threshold, sampleX, sampleY);
+		l.tradeX = copy(sampleX, n);
+		l.tradeY = copy(sampleY, n);
+		n = spread.sample(threshold, sampleX, sampleY);
+		l.spreadX = copy(sampleX, n);
+		l.spreadY = copy(sampleY, n);
+		lines = l;
+	}
+
+	private static double[] copy(double[] a, int n) {
+		double[] c = new double[n];
+		System.arraycopy(a, 0, c, 0, n);
+		return c;
+	}
+
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		int w = getWidth() - MARGIN - 5;
+		int h = getHeight() - 10;
+		if (w <= 0 || h <= 0) return;
+		plotWidth = w;
+		Lines l = lines;
+
+		// prices on the top two thirds, the spread on the bottom third
+		int priceTop = 5;
+		int priceHeight = (2 * h) / 3 - 10;
+		int spreadTop = priceTop + priceHeight + 15;
+		int spreadHeight = h - spreadTop;
+
+		double pMin = Math.min(min(l.midY), min(l.tradeY));
+		double pMax = Math.max(max(l.midY), max(l.tradeY));
+		if (pMax == pMin) {
+			pMin -= 1;
+			pMax += 1;
+		}
+		drawFrame(g, priceTop, w, priceHeight, pMin, pMax, "price");
+		drawLine(g, l.tradeX, l.tradeY, l.rounds, pMin, pMax, priceTop, w,
+				priceHeight, TRADE_COLOR);
+		drawLine(g, l.midX, l.midY, l.rounds, pMin, pMax, priceTop, w,
+				priceHeight, MIDPOINT_COLOR);
+
+		double sMax = max(l.spreadY);
+		if (sMax == 0) sMax = 1;
+		drawFrame(g, spreadTop, w, spreadHeight, 0, sMax, "spread");
+		drawLine(g, l.spreadX, l.spreadY, l.rounds, 0, sMax, spreadTop, w,
+				spreadHeight, SPREAD_COLOR);
+	}
+
+	// draw the box of a plot with its range on the left
+	private void drawFrame(Graphics g, int top, int w, int h, double lo,
+			double hi, String label) {
+		g.setColor(Color.LIGHT_GRAY);
+		g.drawRect(MARGIN, top, w, h);
+		g.setColor(Color.BLACK);
+		if (hi > lo) {
+			g.drawString(String.format("%.2f", hi), 2, top + 10);
+			g.drawString(String.format("%.2f", lo), 2, top + h);
+		}
+		g.drawString(label, MARGIN + w - 50, top + 12);
+	}
+
+	// draw one line of a plot as a polyline
+	private void drawLine(Graphics g, double[] x, double[] y, int rounds,
+			double lo, double hi, int top, int w, int h, Color color) {
+		int n = x.length;
+		if (n == 0 || !(hi > lo)) return;
+		int[] px = new int[n];
+		int[] py = new int[n];
+		for (int i = 0; i < n; i++) {
+			px[i] = MARGIN + (int) (x[i] * w / rounds);
+			py[i] = top + h - (int) ((y[i] - lo) * h / (hi - lo));
+		}
+		g.setColor(color);
+		g.drawPolyline(px, py, n);
+	}
+
+	private static double min(double[] a) {
+		double m = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < a.length; i++) {
+			m = Math.min(m, a[i]);
+		}
+		return m;
+	}
+
+	private static double max(double[] a) {
+		double m = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < a.length; i++) {
+			m = Math.max(m, a[i]);
+		}
+		return m;
+	}
+
+	// the lines of one frame, never changed once published
+	private static class Lines {
+		int			rounds	= 1;
+		double[]	midX		= new double[0];
+		double[]	midY		= new double[0];
+		double[]	tradeX	= new double[0];
+		double[]	tradeY	= new double[0];
+		double[]	spreadX	= new double[0];
+		double[]	spreadY	= new double[0];
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Replication Driver
+ * 
+ * Runs independent replications (different seeds) of one configuration in parallel and
+ * keeps running means and confidence intervals of the average spread and book sizes.  It
+ * stops adding replications as soon as the confidence interval on the average spread is
+ * narrower than the target half width (after a minimum number of replications), or when
+ * the maximum is reached.  Replications are always looked at in seed order and the
+ * stopping rule is checked after each one, so the answer does not depend on the number of
+ * threads: extra replications that were already running when the target was met are
+ * thrown away.
+ */
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.Future;
+
+public class ReplicationDriver {
+
+	private SweepRunner	runner;
+	private double			targetHalfWidth;
+	private double			confidence;
+	private int				minReplications;
+	private int				maxReplications;
+
+	public ReplicationDriver(SweepRunner runner, double targetHalfWidth,
+										double confidence, int minReplications,
+										int maxReplications) {
+		if (minReplications < 2) minReplications = 2;
+		this.runner = runner;
+		this.targetHalfWidth = targetHalfWidth;
+		this.confidence = confidence;
+		this.minReplications = minReplications;
+		this.maxReplications = maxReplications;
+	}
+
+	// 95% confidence, between 5 and 1000 replications
+	public ReplicationDriver(SweepRunner runner, double targetHalfWidth) {
+		this(runner, targetHalfWidth, 0.95, 5, 1000);
+	}
+
+	// replicate one configuration; replication k runs with the k-th seed of masterSeed
+	public Result replicate(SimulationConfig config, long masterSeed) {
+		Result result = new Result(config);
+		LinkedList<Future<SweepResult>> running = new LinkedList<Future<SweepResult>>();
+		int submitted = 0;
+
+		// keep every worker busy, but never queue more than the maximum
+		while (submitted < maxReplications && running.size() < runner.getThreads()) {
+			running.add(runner.submit(config.with("seed", Long.toString(SimRandom
+					.seedFor(masterSeed, submitted++)))));
+		}
+		while (!running.isEmpty()) {
+			result.add(SweepRunner.await(running.removeFirst()));
+			if (result.getCount() >= minReplications
+					&& result.getSpread().getHalfWidth(confidence) <= targetHalfWidth) {
+				result.converged = true;
+				break;
+			}
+			if (submitted < maxReplications) {
+				running.add(runner.submit(config.with("seed", Long
+						.toString(SimRandom.seedFor(masterSeed, submitted++)))));
+			}
+		}
+
+		// the target was met, so the rest are not needed; interrupting them stops them at
+		// the end of their current round (see SweepRunner.runOne)
+		for (Future<SweepResult> f : running) {
+			f.cancel(true);
+		}
+		return result;
+	}
+
+	// replicate every point of a grid (each point with the master seed of the grid point),
+	// printing a row per point as it finishes
+	public List<Result> replicate(ParameterGrid grid, PrintStream out) {
+		List<SimulationConfig> configs = grid.getConfigs();
+		List<Result> results = new ArrayList<Result>();
+		if (out != null) {
+			out.println(SweepResult.header(grid.getAxes())
+					+ ", spread, halfwidth, bids, asks, replications, converged");
+		}
+		for (int i = 0; i < configs.size(); i++) {
+			SimulationConfig c = configs.get(i);
+			Result r = replicate(c, c.getSeed());
+			results.add(r);
+			if (out != null) {
+				StringBuilder sb = new StringBuilder();
+				for (String axis : grid.getAxes()) {
+					sb.append(c.get(axis)).append(", ");
+				}
+				sb.append(String.format("%.4f, %.4f, %.4f, %.4f, %d, %b", r
+						.getSpread().getMean(), r.getSpread().getHalfWidth(confidence),
+						r.getBids().getMean(), r.getAsks().getMean(), r.getCount(),
+						r.isConverged()));
+				out.println(sb.toString());
+				out.flush();
+			}
+		}
+		return results;
+	}
+
+	// get the confidence level of the intervals
+	public double getConfidence() {
+		return confidence;
+	}
+
+	// the replications of one configuration
+	public static class Result {
+		private SimulationConfig	config;
+		private RunningStatistics	spread;
+		private RunningStatistics	bids;
+		private RunningStatistics	asks;
+		private boolean				converged;
+
+		public Result(SimulationConfig config) {
+			this.config = config;
+			this.spread = new RunningStatistics();
+			this.bids = new RunningStatistics();
+			this.asks = new RunningStatistics();
+			this.converged = false;
+		}
+
+		// add one replication
+		public void add(SweepResult r) {
+			spread.add(r.getAverageSpread());
+			bids.add(r.getAverageBids());
+			asks.add(r.getAverageAsks());
+		}
+
+		// get the configuration that was replicated
+		public SimulationConfig getConfig() {
+			return config;
+		}
+
+		// get the number of replications
+		public long getCount() {
+			return spread.getCount();
+		}
+
+		// get the statistics of the average spread over the replications
+		public RunningStatistics getSpread() {
+			return spread;
+		}
+
+		// get the statistics of the average buy book size over the replications
+		public RunningStatistics getBids() {
+			return bids;
+		}
+
+		// get the statistics of the average sell book size over the replications
+		public RunningStatistics getAsks() {
+			return asks;
+		}
+
+		// did the confidence interval reach the target?
+		public boolean isConverged() {
+			return converged;
+		}
+	}
+
+	// replicates the default config of a model until the 95% interval on the average
+	// spread is within halfWidth: ReplicationDriver <das|ci> <halfWidth> [rounds] [threads]
+	public static void main(String[] args) {
+		String model = (args.length > 0) ? args[0] : SimulationConfig.DAS;
+		double halfWidth = (args.length > 1) ? Double.parseDouble(args[1]) : 0.01;
+		SimulationConfig config = new SimulationConfig(model);
+		if (args.length > 2) config.set("rounds", args[2]);
+		SweepRunner runner = (args.length > 3) ? new SweepRunner(Integer
+				.parseInt(args[3])) : new SweepRunner();
+
+		ReplicationDriver driver = new ReplicationDriver(runner, halfWidth);
+		Result r = driver.replicate(config, new SimRandom().nextLong());
+		runner.shutdown();
+		System.out.printf("%s: spread %.4f +- %.4f after %d replications (%s)",
+				config.getModel(), r.getSpread().getMean(), r.getSpread()
+						.getHalfWidth(driver.getConfidence()), r.getCount(), r
+						.isConverged() ? "converged" : "not converged");
+		System.out.println();
+	}
+}
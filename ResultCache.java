@@ -0,0 +1,436 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Result Cache
+ * 
+ * Persistent cache of sweep results, keyed by a hash of the full simulation config (which
+ * includes the seed) and the version of the simulation code, so overlapping sweeps only run
+ * the points that are missing and a change to the engine never serves stale results.
+ * 
+ * The cache is one file of fixed size records (key, last use, result).  In memory the only
+ * index is an open addressing hash table of primitive arrays (about 20 bytes an entry), so
+ * lookups stay O(1) with millions of entries.  When the cache grows past its maximum size
+ * it is compacted down to the most recently used three quarters of its entries.  Closing
+ * the cache saves the table next to the data file (".idx"), so the next open reads the
+ * keys from there instead of scanning every record; the index is dropped as soon as it is
+ * read, so one left behind by a crash is never trusted.
+ * 
+ * The code version is a hash of the bytecode of every class the engine can reach from
+ * SimulationConfig and SweepRunner, found by following the class references in the
+ * constant pools, so a new engine class never needs to be listed anywhere.
+ */
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.*;
+
+public class ResultCache {
+
+	// the classes the default code version is reached from
+	private static final String[]	ENGINE_ROOTS	= { "SimulationConfig",
+			"SweepRunner"										};
+	private static final long		INDEX_MAGIC		= 0x4441535243494458L;  // "DASRCIDX"
+
+	// key (16) + last used (8) + spread, bids, asks (24) + rounds (4) + nanos (8)
+	private static final int			RECORD_SIZE		= 60;
+
+	private File							file;
+	private RandomAccessFile			data;
+	private String							codeVersion;
+	private int								maxEntries;
+
+	// open addressing table: key halves and record number + 1 (0 marks an empty slot)
+	private long[]							keyHigh;
+	private long[]							keyLow;
+	private int[]							records;
+	private int								size;
+	private long							clock;  // logical time of the last use
+	private long							hits;
+	private long							misses;
+	private ByteBuffer					buffer	= ByteBuffer.allocate(RECORD_SIZE);
+
+	// open (or create) a cache file holding at most maxEntries results
+	public ResultCache(File file, int maxEntries, String codeVersion)
+			throws IOException {
+		this.file = file;
+		this.maxEntries = maxEntries;
+		this.codeVersion = codeVersion;
+		this.data = new RandomAccessFile(file, "rw");
+		this.hits = 0;
+		this.misses = 0;
+		load();
+	}
+
+	// open a cache with the default size and the version of the code being run
+	public ResultCache(File file) throws IOException {
+		this(file, 10000000, defaultCodeVersion());
+	}
+
+	// a hash of the bytecode of the engine classes, so any change to them (a rebuild with
+	// different behaviour) gets its own cache entries
+	public static String defaultCodeVersion() {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (String c : getEngineClasses()) {
+				md.update(c.getBytes("UTF-8"));
+				md.update(readClass(c));
+			}
+			return toHex(md.digest()).substring(0, 16);
+		} catch (Exception e) {
+			throw new RuntimeException("could not hash the engine classes", e);
+		}
+	}
+
+	// get the name of every class reachable from the engine roots that isn't part of the
+	// platform, sorted
+	public static SortedSet<String> getEngineClasses() throws IOException {
+		SortedSet<String> found = new TreeSet<String>();
+		LinkedList<String> queue = new LinkedList<String>(Arrays
+				.asList(ENGINE_ROOTS));
+		while (!queue.isEmpty()) {
+			String c = queue.removeFirst();
+			if (found.contains(c)) continue;
+			byte[] bytes = readClass(c);
+			if (bytes == null) continue;  // a platform class
+			found.add(c);
+			queue.addAll(referencedClasses(bytes));
+		}
+		return found;
+	}
+
+	// read the bytecode of a class next to this one, or null if it comes from somewhere
+	// else (the platform)
+	private static byte[] readClass(String name) throws IOException {
+		String self = ResultCache.class.getResource("ResultCache.class")
+				.toString();
+		String base = self.substring(0, self.length() - "ResultCache.class".length());
+		URL url = ResultCache.class.getResource("/" + name + ".class");
+		if (url == null || !url.toString().startsWith(base)) return null;
+		InputStream in = url.openStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				out.write(buf, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	// the names of the classes a class file refers to (its CONSTANT_Class entries)
+	private static List<String> referencedClasses(byte[] bytes)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		in.skipBytes(8);  // magic and version
+		int count = in.readUnsignedShort();
+		String[] utf8 = new String[count];
+		int[] classNames = new int[count];
+		int numClasses = 0;
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case 1: // Utf8
+				utf8[i] = in.readUTF();
+				break;
+			case 7: // Class
+				classNames[numClasses++] = in.readUnsignedShort();
+				break;
+			case 8: // String
+			case 16: // MethodType
+			case 19: // Module
+			case 20: // Package
+				in.skipBytes(2);
+				break;
+			case 15: // MethodHandle
+				in.skipBytes(3);
+				break;
+			case 3: // Integer
+			case 4: // Float
+			case 9: // Fieldref
+			case 10: // Methodref
+			case 11: // InterfaceMethodref
+			case 12: // NameAndType
+			case 17: // Dynamic
+			case 18: // InvokeDynamic
+				in.skipBytes(4);
+				break;
+			case 5: // Long
+			case 6: // Double
+				in.skipBytes(8);
+				i++;  // takes two entries
+				break;
+			default:
+				throw new IOException("bad constant pool tag " + tag);
+			}
+		}
+		List<String> names = new ArrayList<String>();
+		for (int k = 0; k < numClasses; k++) {
+			String name = utf8[classNames[k]];
+			if (name != null && !name.startsWith("[")) names.add(name);
+		}
+		return names;
+	}
+
+	// get the code version the cache keys include
+	public String getCodeVersion() {
+		return codeVersion;
+	}
+
+	// get the number of cached results
+	public synchronized int size() {
+		return size;
+	}
+
+	// get the number of lookups that found a result
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	// get the number of lookups that didn't
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	// look up the result of a config, or null if it hasn't been run
+	public synchronized SweepResult get(SimulationConfig config) throws IOException {
+		long[] key = key(config);
+		int slot = find(key[0], key[1]);
+		if (records[slot] == 0) {
+			misses++;
+			return null;
+		}
+		hits++;
+		long pos = (long) (records[slot] - 1) * RECORD_SIZE;
+		data.seek(pos);
+		data.readFully(buffer.array());
+		buffer.putLong(16, ++clock);
+		data.seek(pos + 16);
+		data.write(buffer.array(), 16, 8);
+		buffer.position(24);
+		return new SweepResult(config, buffer.getDouble(), buffer.getDouble(),
+				buffer.getDouble(), buffer.getInt(), buffer.getLong());
+	}
+
+	// store the result of a run
+	public synchronized void put(SweepResult r) throws IOException {
+		long[] key = key(r.getConfig());
+		int slot = find(key[0], key[1]);
+		if (records[slot] != 0) return;  // the same config always gives the same result
+
+		int record = (int) (data.length() / RECORD_SIZE);
+		buffer.clear();
+		buffer.putLong(key[0]).putLong(key[1]).putLong(++clock);
+		buffer.putDouble(r.getAverageSpread()).putDouble(r.getAverageBids())
+				.putDouble(r.getAverageAsks());
+		buffer.putInt(r.getRounds()).putLong(r.getElapsedNanos());
+		data.seek((long) record * RECORD_SIZE);
+		data.write(buffer.array());
+		insert(slot, key[0], key[1], record);
+		if (size > maxEntries) compact(maxEntries * 3 / 4);
+	}
+
+	// close the cache file, saving the table for the next open
+	public synchronized void close() throws IOException {
+		long length = data.length();
+		data.close();
+		File tmp = new File(file.getPath() + ".idx.tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			out.writeLong(INDEX_MAGIC);
+			out.writeLong(length);
+			out.writeLong(clock);
+			out.writeInt(size);
+			for (int i = 0; i < records.length; i++) {
+				if (records[i] == 0) continue;
+				out.writeLong(keyHigh[i]);
+				out.writeLong(keyLow[i]);
+				out.writeInt(records[i] - 1);
+			}
+		} finally {
+			out.close();
+		}
+		replace(tmp, indexFile());
+	}
+
+	private File indexFile() {
+		return new File(file.getPath() + ".idx");
+	}
+
+	// move from over to, replacing it in one step where the platform allows
+	private static void replace(File from, File to) throws IOException {
+		if (from.renameTo(to)) return;
+		// some platforms (Windows) won't rename over an existing file
+		if (!to.delete() || !from.renameTo(to)) throw new IOException(
+				"could not replace " + to);
+	}
+
+	// drop all but the keep most recently used entries and rewrite the file
+	private void compact(int keep) throws IOException {
+		int n = (int) (data.length() / RECORD_SIZE);
+		long[] lastUsed = new long[n];
+		for (int i = 0; i < n; i++) {
+			data.seek((long) i * RECORD_SIZE + 16);
+			lastUsed[i] = data.readLong();
+		}
+		long[] sorted = lastUsed.clone();
+		Arrays.sort(sorted);
+		long cutoff = (keep <= 0 || keep >= n) ? Long.MIN_VALUE : sorted[n - keep];
+
+		// copy the survivors to a new file, then swap it in
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		byte[] record = new byte[RECORD_SIZE];
+		int kept = 0;
+		try {
+			for (int i = 0; i < n && kept < keep; i++) {
+				if (lastUsed[i] < cutoff) continue;
+				data.seek((long) i * RECORD_SIZE);
+				data.readFully(record);
+				out.write(record);
+				kept++;
+			}
+		} finally {
+			out.close();
+		}
+		data.close();
+		replace(tmp, file);
+		data = new RandomAccessFile(file, "rw");
+		load();
+	}
+
+	// rebuild the in memory table from the file
+	private void load() throws IOException {
+		int n = (int) (data.length() / RECORD_SIZE);
+		// drop a partly written record at the end, left behind by a crash
+		if (data.length() != (long) n * RECORD_SIZE) data.setLength((long) n
+				* RECORD_SIZE);
+		// room for what is there, the table grows as results are added
+		int capacity = 16;
+		while (capacity < n * 2) {
+			capacity <<= 1;
+		}
+		keyHigh = new long[capacity];
+		keyLow = new long[capacity];
+		records = new int[capacity];
+		size = 0;
+		clock = 0;
+		if (loadIndex(n)) return;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			for (int i = 0; i < n; i++) {
+				long high = in.readLong();
+				long low = in.readLong();
+				long used = in.readLong();
+				in.skipBytes(RECORD_SIZE - 24);
+				if (used > clock) clock = used;
+				int slot = find(high, low);
+				if (records[slot] == 0) insert(slot, high, low, i);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	// read the table saved by close if it matches the data file, and drop it either way
+	private boolean loadIndex(int n) throws IOException {
+		File index = indexFile();
+		if (!index.exists()) return false;
+		boolean loaded = false;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(index), 1 << 16));
+		try {
+			if (in.readLong() == INDEX_MAGIC
+					&& in.readLong() == (long) n * RECORD_SIZE) {
+				long savedClock = in.readLong();
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					long high = in.readLong();
+					long low = in.readLong();
+					int record = in.readInt();
+					int slot = find(high, low);
+					if (records[slot] == 0) insert(slot, high, low, record);
+				}
+				clock = savedClock;
+				loaded = true;
+			}
+		} catch (EOFException e) {
+			// a short index is ignored
+		} finally {
+			in.close();
+		}
+		if (!index.delete()) throw new IOException("could not remove " + index);
+		if (!loaded) {
+			Arrays.fill(records, 0);
+			size = 0;
+			clock = 0;
+		}
+		return loaded;
+	}
+
+	// find the slot of a key, or the empty slot where it would go
+	private int find(long high, long low) {
+		int mask = records.length - 1;
+		int slot = (int) (low ^ (low >>> 32)) & mask;
+		while (records[slot] != 0
+				&& (keyHigh[slot] != high || keyLow[slot] != low)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	// put a key in an empty slot, growing the table when it gets half full
+	private void insert(int slot, long high, long low, int record) {
+		keyHigh[slot] = high;
+		keyLow[slot] = low;
+		records[slot] = record + 1;
+		size++;
+		if (size * 2 > records.length) {
+			long[] oldHigh = keyHigh;
+			long[] oldLow = keyLow;
+			int[] oldRecords = records;
+			keyHigh = new long[oldRecords.length * 2];
+			keyLow = new long[oldRecords.length * 2];
+			records = new int[oldRecords.length * 2];
+			for (int i = 0; i < oldRecords.length; i++) {
+				if (oldRecords[i] == 0) continue;
+				int s = find(oldHigh[i], oldLow[i]);
+				keyHigh[s] = oldHigh[i];
+				keyLow[s] = oldLow[i];
+				records[s] = oldRecords[i];
+			}
+		}
+	}
+
+	// the first 128 bits of the SHA-256 of the code version and the canonical config
+	private long[] key(SimulationConfig config) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] d = md.digest((codeVersion + "\n" + config.toString())
+					.getBytes("UTF-8"));
+			long high = 0, low = 0;
+			for (int i = 0; i < 8; i++) {
+				high = (high << 8) | (d[i] & 0xff);
+				low = (low << 8) | (d[i + 8] & 0xff);
+			}
+			return new long[] { high, low };
+		} catch (Exception e) {
+			throw new RuntimeException("could not hash config", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+}
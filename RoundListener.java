@@ -0,0 +1,18 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interface for RoundListener
+ * 
+ * A round listener is called by a MarketSimulation at the end of every round it processes
+ * (automatic or user), and whenever interest and dividends are paid out, on the simulation
+ * thread.
+ */
+
+public interface RoundListener {
+	// the given round of the simulation has been completely processed
+	void roundCompleted(MarketSimulation sim, int round);
+
+	// interest (a multiplier) and a dividend per share were paid out in the given round
+	void interestApplied(MarketSimulation sim, int round, double interestRate,
+			double dividend);
+}
@@ -0,0 +1,121 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Running Statistics
+ * 
+ * Mean and variance of a stream of observations using Welford's update, plus Student t
+ * confidence intervals on the mean.  O(1) memory no matter how many observations are added.
+ */
+
+public class RunningStatistics {
+
+	private long	n;
+	private double	mean;
+	private double	m2;  // sum of squared differences from the mean
+	private double	min;
+	private double	max;
+
+	public RunningStatistics() {
+		this.n = 0;
+		this.mean = 0.0;
+		this.m2 = 0.0;
+		this.min = Double.POSITIVE_INFINITY;
+		this.max = Double.NEGATIVE_INFINITY;
+	}
+
+	// add an observation
+	public void add(double x) {
+		n++;
+		double d = x - mean;
+		mean += d / n;
+		m2 += d * (x - mean);
+		if (x < min) min = x;
+		if (x > max) max = x;
+	}
+
+	// get the number of observations
+	public long getCount() {
+		return n;
+	}
+
+	// get the mean of the observations
+	public double getMean() {
+		return mean;
+	}
+
+	// get the sample variance of the observations
+	public double getVariance() {
+		return (n < 2) ? 0.0 : m2 / (n - 1);
+	}
+
+	// get the sample standard deviation of the observations
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	// get the standard error of the mean
+	public double getStandardError() {
+		return (n < 2) ? Double.POSITIVE_INFINITY : Math.sqrt(getVariance() / n);
+	}
+
+	// get the smallest observation
+	public double getMin() {
+		return min;
+	}
+
+	// get the largest observation
+	public double getMax() {
+		return max;
+	}
+
+	// get the half width of the confidence interval on the mean at the given level (eg.
+	// 0.95); infinite until there are two observations
+	public double getHalfWidth(double confidence) {
+		if (n < 2) return Double.POSITIVE_INFINITY;
+		return studentT(1 - (1 - confidence) / 2, n - 1) * getStandardError();
+	}
+
+	// quantile of the Student t distribution with df degrees of freedom, from the normal
+	// quantile with the Cornish-Fisher expansion (good to about 1e-3 for df >= 3)
+	public static double studentT(double p, long df) {
+		double z = normalQuantile(p);
+		if (df == 1) return Math.tan(Math.PI * (p - 0.5));
+		if (df == 2) return (2 * p - 1) * Math.sqrt(2 / (4 * p * (1 - p)));
+		double v = df;
+		double z2 = z * z;
+		double z3 = z2 * z, z5 = z3 * z2, z7 = z5 * z2, z9 = z7 * z2;
+		return z + (z3 + z) / (4 * v) + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+				+ (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v)
+				+ (79 * z9 + 776 * z7 + 1482 * z5 - 1920 * z3 - 945 * z)
+				/ (92160 * v * v * v * v);
+	}
+
+	// quantile of the standard normal distribution (Acklam's rational approximation)
+	public static double normalQuantile(double p) {
+		if (p <= 0) return Double.NEGATIVE_INFINITY;
+		if (p >= 1) return Double.POSITIVE_INFINITY;
+		double[] a = { -3.969683028665376e+01, 2.209460984245205e+02,
+				-2.759285104469687e+02, 1.383577518672690e+02,
+				-3.066479806614716e+01, 2.506628277459239e+00 };
+		double[] b = { -5.447609879822406e+01, 1.615858368580409e+02,
+				-1.556989798598866e+02, 6.680131188771972e+01,
+				-1.328068155288572e+01 };
+		double[] c = { -7.784894002430293e-03, -3.223964580411365e-01,
+				-2.400758277161838e+00, -2.549732539343734e+00,
+				4.374664141464968e+00, 2.938163982698783e+00 };
+		double[] d = { 7.784695709041462e-03, 3.224671290700398e-01,
+				2.445134137142996e+00, 3.754408661907416e+00 };
+		double low = 0.02425;
+		if (p < low) {
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+					/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+		}
+		if (p > 1 - low) return -normalQuantile(1 - p);
+		double q = p - 0.5;
+		double r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5])
+				* q
+				/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+}
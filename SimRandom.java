@@ -0,0 +1,183 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * SimRandom extends Random
+ * 
+ * Fast, seedable, splittable random number generator for the simulations.  It is a
+ * xoroshiro128++ generator seeded through SplitMix64, so unlike java.util.Random it has no
+ * atomic compare-and-set on every draw (each simulation thread owns its generators), and
+ * nextGaussian uses a ziggurat instead of the synchronized polar method.  Because it is a
+ * Random, it drops into every agent unchanged.
+ * 
+ * A run is reproducible from one master seed: split() derives an independent child
+ * generator from a parent, so as long as a simulation splits its children in the same
+ * order it gets the same streams, whichever thread it runs on.
+ */
+import java.util.Random;
+
+@SuppressWarnings("serial")
+public class SimRandom extends Random {
+
+	private static final long		GOLDEN			= 0x9E3779B97F4A7C15L;
+	private static final double	DOUBLE_UNIT		= 1.0 / (1L << 53);
+
+	// ziggurat tables for the normal distribution (Marsaglia & Tsang, Doornik's layout)
+	private static final int		ZIG_LAYERS		= 128;
+	private static final double	ZIG_R				= 3.442619855899;
+	private static final double	ZIG_V				= 9.91256303526217e-3;
+	private static final double[]	ZIG_X				= new double[ZIG_LAYERS + 1];
+	private static final double[]	ZIG_RATIO		= new double[ZIG_LAYERS];
+
+	static {
+		double f = Math.exp(-0.5 * ZIG_R * ZIG_R);
+		ZIG_X[0] = ZIG_V / f;
+		ZIG_X[1] = ZIG_R;
+		ZIG_X[ZIG_LAYERS] = 0.0;
+		for (int i = 2; i < ZIG_LAYERS; i++) {
+			ZIG_X[i] = Math.sqrt(-2 * Math.log(ZIG_V / ZIG_X[i - 1] + f));
+			f = Math.exp(-0.5 * ZIG_X[i] * ZIG_X[i]);
+		}
+		for (int i = 0; i < ZIG_LAYERS; i++) {
+			ZIG_RATIO[i] = ZIG_X[i + 1] / ZIG_X[i];
+		}
+	}
+
+	private long						s0;
+	private long						s1;
+
+	// seed from the clock, for runs that don't need to be reproduced
+	public SimRandom() {
+		this(System.nanoTime() ^ mix(System.identityHashCode(new Object())));
+	}
+
+	public SimRandom(long seed) {
+		super(0);
+		setSeed(seed);
+	}
+
+	// reseed the generator (also called by the Random constructor)
+	public void setSeed(long seed) {
+		// expand the seed into two words of state with SplitMix64
+		long z = seed;
+		s0 = mix(z += GOLDEN);
+		s1 = mix(z += GOLDEN);
+		if (s0 == 0 && s1 == 0) s1 = GOLDEN;  // the all zero state is a fixed point
+	}
+
+	// derive an independent generator from this one
+	public SimRandom split() {
+		return new SimRandom(mix(nextLong()));
+	}
+
+	// derive an independent generator from any generator (used when a caller hands the
+	// simulation a plain Random)
+	public static SimRandom split(Random parent) {
+		if (parent instanceof SimRandom) return ((SimRandom) parent).split();
+		return new SimRandom(mix(parent.nextLong()));
+	}
+
+	// derive the seed of the index-th stream of a master seed, without needing the streams
+	// before it (so points of a sweep can be seeded in any order)
+	public static long seedFor(long master, long index) {
+		return mix(master + (index + 1) * GOLDEN);
+	}
+
+	// the SplitMix64 finalizer, a good 64 bit mixing function
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// next 64 random bits (xoroshiro128++)
+	public long nextLong() {
+		long a = s0;
+		long b = s1;
+		long result = Long.rotateLeft(a + b, 17) + a;
+		b ^= a;
+		s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+		s1 = Long.rotateLeft(b, 28);
+		return result;
+	}
+
+	// used by every other method inherited from Random
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	// uniform in [0, bound) without modulo bias (Lemire's method)
+	public int nextInt(int bound) {
+		if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+		long m = (nextLong() >>> 32) * bound;
+		long low = m & 0xFFFFFFFFL;
+		if (low < bound) {
+			long threshold = (0x100000000L - bound) % bound;
+			while (low < threshold) {
+				m = (nextLong() >>> 32) * bound;
+				low = m & 0xFFFFFFFFL;
+			}
+		}
+		return (int) (m >>> 32);
+	}
+
+	// uniform in [0, 1)
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	// fill buf[off..off+len-1] with uniforms in [0, 1), the same values as that many calls
+	// of nextDouble but with the state kept in registers for the whole loop
+	public void nextDoubles(double[] buf, int off, int len) {
+		long a = s0;
+		long b = s1;
+		for (int i = off; i < off + len; i++) {
+			long result = Long.rotateLeft(a + b, 17) + a;
+			b ^= a;
+			a = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+			b = Long.rotateLeft(b, 28);
+			buf[i] = (result >>> 11) * DOUBLE_UNIT;
+		}
+		s0 = a;
+		s1 = b;
+	}
+
+	public float nextFloat() {
+		return (nextLong() >>> 40) * (1.0f / (1 << 24));
+	}
+
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	// standard normal using the ziggurat
+	public double nextGaussian() {
+		while (true) {
+			long bits = nextLong();
+			int i = (int) (bits & (ZIG_LAYERS - 1));
+			// the top 53 bits give a uniform in [-1, 1)
+			double u = 2.0 * ((bits >>> 11) * DOUBLE_UNIT) - 1.0;
+			if (Math.abs(u) < ZIG_RATIO[i]) return u * ZIG_X[i];
+			if (i == 0) return normalTail(u < 0);
+
+			// in the wedge between the layer and the curve
+			double x = u * ZIG_X[i];
+			double f0 = Math.exp(-0.5 * (ZIG_X[i] * ZIG_X[i] - x * x));
+			double f1 = Math.exp(-0.5 * (ZIG_X[i + 1] * ZIG_X[i + 1] - x * x));
+			if (f1 + nextDouble() * (f0 - f1) < 1.0) return x;
+		}
+	}
+
+	// sample from the tail of the normal beyond ZIG_R
+	private double normalTail(boolean negative) {
+		double x, y;
+		do {
+			x = Math.log(1.0 - nextDouble()) / ZIG_R;
+			y = Math.log(1.0 - nextDouble());
+		} while (-2 * y < x * x);
+		return negative ? x - ZIG_R : ZIG_R - x;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Simulation Config
+ * 
+ * The full set of parameters needed to build one simulation, either a DASimulation ("das")
+ * or a CISimulation ("ci"), plus the seed it runs with.  Parameters are addressed by name so
+ * sweeps can vary any of them, and values are kept in a canonical form (sorted names,
+ * normalized numbers) so two configs describing the same run print the same way.  The
+ * defaults are the values hard coded in DASimulation.main and CISimulation.main.
+ */
+import java.io.*;
+import java.util.*;
+
+public class SimulationConfig {
+
+	public static final String						DAS		= "das";
+	public static final String						CI			= "ci";
+
+	// the parameters of each model and their types (i = int, d = double, b = boolean)
+	private static final String[][]				DAS_KEYS	= { { "rounds", "i" },
+			{ "zeroIntel", "i" }, { "chartists", "i" }, { "expirations", "b" },
+			{ "history", "i" }, { "lp", "d" }, { "sp", "d" }, { "interval", "d" },
+			{ "exp", "i" }, { "fast", "b" }, { "compact", "b" },
+			{ "reserve", "b" }, { "tolerance", "d" }, { "seed", "l" }												};
+	private static final String[][]				CI_KEYS	= { { "rounds", "i" },
+			{ "agents", "i" }, { "interest", "b" }, { "tau", "i" },
+			{ "delta", "d" }, { "lambda", "d" }, { "pf", "d" }, { "std1", "d" },
+			{ "std2", "d" }, { "n0", "d" }, { "lmax", "i" }, { "kmax", "d" },
+			{ "skip", "b" }, { "compact", "b" }, { "reserve", "b" },
+			{ "tolerance", "d" }, { "seed", "l" }												};
+
+	private String										model;
+	private TreeMap<String, String>				values;
+
+	// create a config for the model with its default parameters
+	public SimulationConfig(String model) {
+		this.model = model;
+		this.values = new TreeMap<String, String>();
+		if (DAS.equals(model)) {
+			set("rounds", "1000000");
+			set("zeroIntel", "100");
+			set("chartists", "0");
+			set("expirations", "true");
+			set("history", "3");
+			set("lp", "0.7");
+			set("sp", "0.5");
+			set("interval", "5");
+			set("exp", "1000");
+			// run zero intelligence only markets on ZeroIntelligenceSimulation
+			set("fast", "false");
+		} else if (CI.equals(model)) {
+			int T = 100;
+			set("rounds", "" + (100 * T));
+			set("agents", "1000");
+			set("interest", "false");
+			set("tau", "" + (2 * T));
+			set("delta", "0.01");
+			set("lambda", "0.5");
+			set("pf", "1000.0");
+			set("std1", "0.1");
+			set("std2", "0.14");
+			set("n0", "0.3");
+			set("lmax", "" + T);
+			set("kmax", "0.5");
+			// jump over the rounds where no agent enters the market
+			set("skip", "false");
+		} else {
+			throw new IllegalArgumentException("unknown model: " + model);
+		}
+		// store the agents as columns of primitive arrays (for very large populations)
+		set("compact", "false");
+		// hold cash and shares for resting limit orders (see LimitOrderBook.setReservations)
+		set("reserve", "false");
+		// stop once the estimates are within this relative half width (0 runs every round)
+		set("tolerance", "0");
+		set("seed", "0");
+	}
+
+	// get the model this config builds
+	public String getModel() {
+		return model;
+	}
+
+	// get the names of every parameter of this config, sorted
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(values.keySet());
+	}
+
+	// is name a parameter of this config's model?
+	public boolean has(String name) {
+		return typeOf(name) != null;
+	}
+
+	// set a parameter, normalizing the value for its type
+	public SimulationConfig set(String name, String value) {
+		String type = typeOf(name);
+		if (type == null) throw new IllegalArgumentException("no parameter "
+				+ name + " for model " + model);
+		String v = value.trim();
+		try {
+			if (type.equals("i")) v = Integer.toString(Integer.parseInt(v));
+			else if (type.equals("l")) v = Long.toString(Long.parseLong(v));
+			else if (type.equals("d")) v = Double.toString(Double.parseDouble(v));
+			else if (type.equals("b")) v = Boolean.toString(Boolean.parseBoolean(v));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad value for " + name + ": "
+					+ value);
+		}
+		values.put(name, v);
+		return this;
+	}
+
+	// set a numeric parameter
+	public SimulationConfig set(String name, double value) {
+		String type = typeOf(name);
+		if ("i".equals(type) || "l".equals(type)) return set(name, Long
+				.toString(Math.round(value)));
+		return set(name, Double.toString(value));
+	}
+
+	// get a copy of this config with one parameter changed
+	public SimulationConfig with(String name, String value) {
+		return copy().set(name, value);
+	}
+
+	// get a copy of this config
+	public SimulationConfig copy() {
+		SimulationConfig c = new SimulationConfig(model);
+		c.values.putAll(values);
+		return c;
+	}
+
+	// get a parameter as it is stored
+	public String get(String name) {
+		String v = values.get(name);
+		if (v == null) throw new IllegalArgumentException("no parameter " + name
+				+ " for model " + model);
+		return v;
+	}
+
+	public int getInt(String name) {
+		return Integer.parseInt(get(name));
+	}
+
+	public long getLong(String name) {
+		return Long.parseLong(get(name));
+	}
+
+	public double getDouble(String name) {
+		return Double.parseDouble(get(name));
+	}
+
+	public boolean getBoolean(String name) {
+		return Boolean.parseBoolean(get(name));
+	}
+
+	// get the seed the simulation runs with
+	public long getSeed() {
+		return getLong("seed");
+	}
+
+	// build the simulation described by this config
+	public MarketSimulation build() {
+		Random random = new SimRandom(getSeed());
+		if (DAS.equals(model)) {
+			if (getBoolean("fast") && getInt("chartists") == 0) {
+				if (getBoolean("reserve")) throw new IllegalArgumentException(
+						"ZeroIntelligenceSimulation has no reservations");
+				return new ZeroIntelligenceSimulation(getInt("rounds"),
+						getInt("zeroIntel"), getBoolean("expirations"),
+						getDouble("lp"), getDouble("sp"), getDouble("interval"),
+						getInt("exp"), random);
+			}
+			DASimulation das = new DASimulation(getInt("rounds"),
+					getInt("zeroIntel"), getInt("chartists"),
+					getBoolean("expirations"), getInt("history"), getDouble("lp"),
+					getDouble("sp"), getDouble("interval"), getInt("exp"), random,
+					getBoolean("compact"));
+			das.getLOB().setReservations(getBoolean("reserve"));
+			return das;
+		}
+		CISimulation cis = new CISimulation(getInt("rounds"), getInt("agents"),
+				getBoolean("interest"), getInt("tau"), getDouble("delta"),
+				getDouble("lambda"), getDouble("pf"), getDouble("std1"),
+				getDouble("std2"), getDouble("n0"), getInt("lmax"),
+				getDouble("kmax"), random, getBoolean("compact"));
+		cis.setGeometricSkip(getBoolean("skip"));
+		cis.getLOB().setReservations(getBoolean("reserve"));
+		return cis;
+	}
+
+	// write the config as properties
+	public void store(OutputStream out) throws IOException {
+		Properties p = new Properties();
+		p.setProperty("model", model);
+		for (Map.Entry<String, String> e : values.entrySet()) {
+			p.setProperty(e.getKey(), e.getValue());
+		}
+		p.store(out, null);
+	}
+
+	// read a config written by store (or by hand): "model" picks the model, every other
+	// property overrides one of its defaults
+	public static SimulationConfig load(InputStream in) throws IOException {
+		Properties p = new Properties();
+		p.load(in);
+		return fromProperties(p);
+	}
+
+	// build a config from properties, see load
+	public static SimulationConfig fromProperties(Properties p) {
+		SimulationConfig c = new SimulationConfig(p.getProperty("model", DAS)
+				.trim());
+		for (String name : p.stringPropertyNames()) {
+			if (!name.equals("model")) c.set(name, p.getProperty(name));
+		}
+		return c;
+	}
+
+	// the canonical one line form of the config: model then every parameter, sorted
+	public String toString() {
+		StringBuilder sb = new StringBuilder(model);
+		for (Map.Entry<String, String> e : values.entrySet()) {
+			sb.append(' ').append(e.getKey()).append('=').append(e.getValue());
+		}
+		return sb.toString();
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof SimulationConfig)) return false;
+		SimulationConfig that = (SimulationConfig) o;
+		return model.equals(that.model) && values.equals(that.values);
+	}
+
+	public int hashCode() {
+		return model.hashCode() * 31 + values.hashCode();
+	}
+
+	// get the type of a parameter of this model, or null if there is no such parameter
+	private String typeOf(String name) {
+		String[][] keys = DAS.equals(model) ? DAS_KEYS : CI_KEYS;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i][0].equals(name)) return keys[i][1];
+		}
+		return null;
+	}
+}
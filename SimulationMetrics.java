@@ -0,0 +1,263 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Simulation Metrics - implements SimulationMetricsMBean, BookListener, RoundListener
+ * 
+ * Live metrics for a running simulation.  The simulation thread is the only writer: every
+ * counter lives in its own slot of an AtomicLongArray and is published with lazySet, which
+ * is a plain ordered store (no CAS and no lock) on the hot path.  Readers (JMX) just load
+ * the slots, so reading never slows the simulation down.  One SimulationMetrics can be
+ * attached to a series of simulations (eg. the runs of a sweep); totals keep counting
+ * across them while the round and book values follow the latest simulation.
+ * 
+ * Reading never changes the metrics.  The rates of the MBean are taken over the last
+ * window of at least a second, so every JMX client sees the same values however often it
+ * reads, and other readers can keep their own Snapshot and measure rates from it.
+ */
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class SimulationMetrics implements SimulationMetricsMBean, BookListener,
+		RoundListener {
+
+	// slots in the counter array
+	private static final int	ROUND					= 0;
+	private static final int	NUM_ROUNDS			= 1;
+	private static final int	ROUNDS_PROCESSED	= 2;
+	private static final int	BUY_BOOK				= 3;
+	private static final int	SELL_BOOK			= 4;
+	private static final int	BEST_BID				= 5;  // raw bits of a double
+	private static final int	BEST_ASK				= 6;  // raw bits of a double
+	private static final int	TRADES				= 7;
+	private static final int	EXPIRIES				= 8;
+	private static final int	THREAD_ID			= 9;
+	private static final int	SIMULATIONS			= 10;
+	private static final int	TYPE_TRADES			= 11; // one slot per agent type from here
+	private static final int	NUM_TYPES			= 4;
+	private static final long	WINDOW				= 1000000000L;  // nanos between rate readings
+
+	private AtomicLongArray		counters;
+
+	// owned by the simulation thread
+	private long					trades;
+	private long					expiries;
+	private long					roundsProcessed;
+	private long[]					typeTrades;
+
+	// the two latest readings of the MBean rates, guarded by this
+	private Snapshot				previous;
+	private Snapshot				latest;
+
+	public SimulationMetrics() {
+		this.counters = new AtomicLongArray(TYPE_TRADES + NUM_TYPES);
+		this.counters.set(BEST_BID, Double.doubleToRawLongBits(-1));
+		this.counters.set(BEST_ASK, Double.doubleToRawLongBits(-1));
+		this.counters.set(THREAD_ID, -1);
+		this.typeTrades = new long[NUM_TYPES];
+		this.latest = snapshot();
+		this.previous = latest;
+	}
+
+	// start watching a simulation and its limit order book
+	public void attach(DAS das) {
+		das.addRoundListener(this);
+		das.getLOB().addListener(this);
+		counters.lazySet(ROUND, das.getCurrentRound());
+		counters.lazySet(NUM_ROUNDS, das.getNumRounds());
+		counters.lazySet(SIMULATIONS, counters.get(SIMULATIONS) + 1);
+	}
+
+	// called by the simulation at the end of each round
+	public void roundCompleted(MarketSimulation sim, int round) {
+		MarketQuotes lob = sim.getQuotes();
+		roundsProcessed++;
+		counters.lazySet(ROUND, round);
+		counters.lazySet(ROUNDS_PROCESSED, roundsProcessed);
+		counters.lazySet(BUY_BOOK, lob.getBuyBookSize());
+		counters.lazySet(SELL_BOOK, lob.getSellBookSize());
+		counters.lazySet(BEST_BID, Double.doubleToRawLongBits(lob.getBestBid()));
+		counters.lazySet(BEST_ASK, Double.doubleToRawLongBits(lob.getBestAsk()));
+		// the simulation can move between threads (see BackgroundSimulation)
+		counters.lazySet(THREAD_ID, Thread.currentThread().getId());
+	}
+
+	// orders are not counted by the metrics
+	public void orderSubmitted(Agent agent, boolean isLimit, boolean isSell,
+			int size, double price) {
+	}
+
+	// interest payments are not counted by the metrics
+	public void interestApplied(MarketSimulation sim, int round, double interestRate,
+			double dividend) {
+	}
+
+	// called by the book whenever a trade clears
+	public void tradeCleared(Agent buyer, Agent seller, int size, double price) {
+		counters.lazySet(TRADES, ++trades);
+		countTypeTrade(buyer.getType());
+		countTypeTrade(seller.getType());
+	}
+
+	// called by the book whenever orders expire
+	public void ordersExpired(int round, int count) {
+		expiries += count;
+		counters.lazySet(EXPIRIES, expiries);
+	}
+
+	// count a trade for the agent type
+	private void countTypeTrade(int type) {
+		if (type < 0 || type >= NUM_TYPES) return;
+		counters.lazySet(TYPE_TRADES + type, ++typeTrades[type]);
+	}
+
+	public int getCurrentRound() {
+		return (int) counters.get(ROUND);
+	}
+
+	public int getNumRounds() {
+		return (int) counters.get(NUM_ROUNDS);
+	}
+
+	public long getRoundsProcessed() {
+		return counters.get(ROUNDS_PROCESSED);
+	}
+
+	public synchronized double getRoundsPerSecond() {
+		window();
+		return latest.getRoundsPerSecond(previous);
+	}
+
+	public int getBuyBookSize() {
+		return (int) counters.get(BUY_BOOK);
+	}
+
+	public int getSellBookSize() {
+		return (int) counters.get(SELL_BOOK);
+	}
+
+	public double getBestBid() {
+		return Double.longBitsToDouble(counters.get(BEST_BID));
+	}
+
+	public double getBestAsk() {
+		return Double.longBitsToDouble(counters.get(BEST_ASK));
+	}
+
+	public long getTrades() {
+		return counters.get(TRADES);
+	}
+
+	public synchronized double getTradesPerSecond() {
+		window();
+		return latest.getTradesPerSecond(previous);
+	}
+
+	public long getExpiries() {
+		return counters.get(EXPIRIES);
+	}
+
+	public synchronized double getExpiriesPerSecond() {
+		window();
+		return latest.getExpiriesPerSecond(previous);
+	}
+
+	public synchronized double getAllocationRate() {
+		window();
+		return latest.getAllocationRate(previous);
+	}
+
+	// move the MBean's window on once the latest reading is a window old
+	private void window() {
+		if (System.nanoTime() - latest.time < WINDOW) return;
+		previous = latest;
+		latest = snapshot();
+	}
+
+	// read the counters now, for measuring rates against a later (or earlier) reading
+	public Snapshot snapshot() {
+		long id = counters.get(THREAD_ID);
+		return new Snapshot(System.nanoTime(), counters.get(ROUNDS_PROCESSED),
+				counters.get(TRADES), counters.get(EXPIRIES), id, allocatedBytes(id));
+	}
+
+	// the bytes a thread has allocated so far, or -1 if unknown
+	private static long allocatedBytes(long id) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (id < 0 || !(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+		// allocation counters are a hotspot extension of the thread bean
+		return ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(id);
+	}
+
+	public long getZeroIntelTrades() {
+		return counters.get(TYPE_TRADES + 0);
+	}
+
+	public long getUserTrades() {
+		return counters.get(TYPE_TRADES + 1);
+	}
+
+	public long getChartistTrades() {
+		return counters.get(TYPE_TRADES + 2);
+	}
+
+	public long getCITrades() {
+		return counters.get(TYPE_TRADES + 3);
+	}
+
+	public int getSimulations() {
+		return (int) counters.get(SIMULATIONS);
+	}
+
+	// turn a count over a period of nanoseconds into a rate per second
+	private static double perSecond(long count, long nanos) {
+		if (nanos <= 0) return 0.0;
+		return count * 1e9 / nanos;
+	}
+
+	/*
+	 * Snapshot - the counters at one time, each reader keeps its own to measure rates
+	 */
+	public static class Snapshot {
+		private final long	time;
+		private final long	rounds;
+		private final long	trades;
+		private final long	expiries;
+		private final long	threadId;  // the thread running the simulation
+		private final long	allocated;  // bytes that thread had allocated, -1 if unknown
+
+		private Snapshot(long time, long rounds, long trades, long expiries,
+								long threadId, long allocated) {
+			this.time = time;
+			this.rounds = rounds;
+			this.trades = trades;
+			this.expiries = expiries;
+			this.threadId = threadId;
+			this.allocated = allocated;
+		}
+
+		// get the rounds processed per second since an earlier snapshot
+		public double getRoundsPerSecond(Snapshot earlier) {
+			return perSecond(rounds - earlier.rounds, time - earlier.time);
+		}
+
+		// get the trades per second since an earlier snapshot
+		public double getTradesPerSecond(Snapshot earlier) {
+			return perSecond(trades - earlier.trades, time - earlier.time);
+		}
+
+		// get the expired orders per second since an earlier snapshot
+		public double getExpiriesPerSecond(Snapshot earlier) {
+			return perSecond(expiries - earlier.expiries, time - earlier.time);
+		}
+
+		// get the bytes allocated per second by the simulation thread since an earlier
+		// snapshot (-1 if unsupported, or the simulation moved threads in between)
+		public double getAllocationRate(Snapshot earlier) {
+			if (allocated < 0 || earlier.allocated < 0
+					|| threadId != earlier.threadId) return -1;
+			return perSecond(allocated - earlier.allocated, time - earlier.time);
+		}
+	}
+}
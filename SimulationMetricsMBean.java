@@ -0,0 +1,66 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Interface for SimulationMetricsMBean
+ * 
+ * Management interface of SimulationMetrics, so a running simulation can be watched with
+ * standard JMX tools (jconsole, VisualVM, ...).  Rates are measured over the last window of
+ * at least a second, and reading them changes nothing, so any number of clients can watch.
+ */
+
+public interface SimulationMetricsMBean {
+	// get the current round of the simulation being watched
+	int getCurrentRound();
+
+	// get the total number of rounds of the simulation being watched
+	int getNumRounds();
+
+	// get the number of rounds processed since the metrics were created
+	long getRoundsProcessed();
+
+	// get the rounds processed per second
+	double getRoundsPerSecond();
+
+	// get the size of the buy book
+	int getBuyBookSize();
+
+	// get the size of the sell book
+	int getSellBookSize();
+
+	// get the best bid in the book (-1 if there is none)
+	double getBestBid();
+
+	// get the best ask in the book (-1 if there is none)
+	double getBestAsk();
+
+	// get the total number of trades
+	long getTrades();
+
+	// get the trades per second
+	double getTradesPerSecond();
+
+	// get the total number of expired orders
+	long getExpiries();
+
+	// get the expired orders per second
+	double getExpiriesPerSecond();
+
+	// get the bytes allocated per second by the simulation thread (-1 if unsupported, or
+	// the simulation moved threads during the window)
+	double getAllocationRate();
+
+	// get the number of trades zero intelligence agents took part in
+	long getZeroIntelTrades();
+
+	// get the number of trades the user took part in
+	long getUserTrades();
+
+	// get the number of trades chartist agents took part in
+	long getChartistTrades();
+
+	// get the number of trades CI agents took part in
+	long getCITrades();
+
+	// get the number of simulations that have been attached
+	int getSimulations();
+}
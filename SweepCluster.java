@@ -0,0 +1,175 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Sweep Cluster
+ * 
+ * Coordinator and worker modes for running one sweep across several JVMs through a
+ * FileWorkQueue.  The coordinator puts the grid into the queue (or resumes the sweep
+ * already there), reclaims the tasks of crashed workers and writes the results table once
+ * every task is done.  Workers claim tasks, run them on their own threads while keeping
+ * their leases alive, and write the results back.  Workers also reclaim expired leases, so
+ * a sweep keeps going even if the coordinator is restarted.
+ * 
+ *   SweepCluster coordinator <dir> <das|ci|config file> <axis> <from> <to> <step> [masterSeed]
+ *   SweepCluster worker <dir> [threads]
+ * 
+ * The base config of the sweep is either the defaults of a model or a properties file
+ * written by SimulationConfig.store.
+ */
+import java.io.*;
+import java.util.*;
+
+public class SweepCluster {
+
+	private static final long	LEASE_MILLIS	= 60000;  // leases expire after a minute
+	private static final long	POLL_MILLIS		= 1000;
+
+	private SweepCluster() {
+	}
+
+	// put a sweep into the queue and wait for the workers to finish it, then print the
+	// results table to out and to results.csv in the queue's directory
+	public static void coordinate(File dir, ParameterGrid grid, PrintStream out)
+			throws IOException, InterruptedException {
+		FileWorkQueue queue = new FileWorkQueue(dir, LEASE_MILLIS);
+		List<String> columns = new ArrayList<String>(grid.getAxes());
+		columns.addAll(Arrays.asList(SweepResult.RESULT_COLUMNS));
+		if (!queue.create(grid.getConfigs(), columns)) {
+			out.println("# resuming sweep in " + dir);
+		}
+
+		int total = queue.getNumTasks();
+		int reported = -1;
+		while (queue.getNumDone() < total) {
+			int reclaimed = queue.reclaimExpired();
+			int finished = queue.getNumDone();
+			if (finished != reported || reclaimed > 0) {
+				out.printf("# %d/%d done, %d running, %d pending, %d re-leased",
+						finished, total, queue.getNumLeased(), queue.getNumPending(),
+						reclaimed);
+				out.println();
+				reported = finished;
+			}
+			Thread.sleep(POLL_MILLIS);
+		}
+
+		PrintStream csv = new PrintStream(new FileOutputStream(new File(dir,
+				"results.csv")));
+		try {
+			printResults(queue, out);
+			printResults(queue, csv);
+		} finally {
+			csv.close();
+		}
+	}
+
+	// print the results table of the finished tasks
+	private static void printResults(FileWorkQueue queue, PrintStream out)
+			throws IOException {
+		List<String> columns = queue.getColumns();
+		out.println(SweepResult.header(columns));
+		for (SweepResult r : queue.getResults()) {
+			out.println(r.row(columns));
+		}
+	}
+
+	// work through the queue with the given number of threads until it is empty
+	public static void work(File dir, int threads) throws InterruptedException {
+		final FileWorkQueue queue = new FileWorkQueue(dir, LEASE_MILLIS);
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						workLoop(queue);
+					} catch (IOException e) {
+						throw new RuntimeException("worker failed", e);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "cluster-worker-" + i);
+			workers[i].start();
+		}
+		for (int i = 0; i < threads; i++) {
+			workers[i].join();
+		}
+	}
+
+	// claim and run tasks until there is nothing left to claim or wait for
+	private static void workLoop(FileWorkQueue queue) throws IOException,
+			InterruptedException {
+		while (true) {
+			FileWorkQueue.Task task = queue.claim();
+			if (task == null) {
+				queue.reclaimExpired();
+				// leased tasks may still come back if their worker dies
+				if (queue.getNumPending() == 0 && queue.getNumLeased() == 0) return;
+				Thread.sleep(POLL_MILLIS);
+				continue;
+			}
+			run(queue, task);
+		}
+	}
+
+	// run one task, keeping its lease alive from a heartbeat thread
+	private static void run(FileWorkQueue queue, final FileWorkQueue.Task task)
+			throws IOException {
+		final long beat = queue.getLeaseMillis() / 4;
+		Thread heartbeat = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(beat);
+						task.heartbeat();
+					}
+				} catch (InterruptedException e) {
+					// the task is done
+				}
+			}
+		}, "lease-heartbeat");
+		heartbeat.setDaemon(true);
+		heartbeat.start();
+		try {
+			task.complete(SweepRunner.runOne(task.getConfig()));
+		} catch (RuntimeException e) {
+			task.release();
+			throw e;
+		} finally {
+			heartbeat.interrupt();
+		}
+	}
+
+	// the defaults of a model, or a config loaded from a file
+	private static SimulationConfig baseConfig(String arg) throws IOException {
+		File f = new File(arg);
+		if (!f.isFile()) return new SimulationConfig(arg);
+		InputStream in = new FileInputStream(f);
+		try {
+			return SimulationConfig.load(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length >= 7 && args[0].equals("coordinator")) {
+			ParameterGrid grid = new ParameterGrid(baseConfig(args[2]));
+			if (args[4].contains(".") || args[6].contains(".")) grid.range(args[3],
+					Double.parseDouble(args[4]), Double.parseDouble(args[5]), Double
+							.parseDouble(args[6]));
+			else grid.range(args[3], Integer.parseInt(args[4]), Integer
+					.parseInt(args[5]), Integer.parseInt(args[6]));
+			if (args.length > 7) grid.setMasterSeed(Long.parseLong(args[7]));
+			coordinate(new File(args[1]), grid, System.out);
+		} else if (args.length >= 2 && args[0].equals("worker")) {
+			int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime
+					.getRuntime().availableProcessors();
+			work(new File(args[1]), threads);
+		} else {
+			System.out.println("usage: SweepCluster coordinator <dir> <das|ci|config>"
+					+ " <axis> <from> <to> <step> [masterSeed]");
+			System.out.println("       SweepCluster worker <dir> [threads]");
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Sweep Result
+ * 
+ * The outcome of one simulation of a sweep: the config it ran with and the statistics it
+ * produced.  Rows of a sweep table are printed by column name, where a column is either a
+ * parameter of the config or one of the result columns below.
+ */
+import java.util.*;
+
+public class SweepResult {
+
+	// result columns that can be printed next to the config parameters ("rate", the run's
+	// rounds per second, can be asked for as well)
+	public static final String[]	RESULT_COLUMNS	= { "spread", "bids", "asks",
+			"rounds", "seconds"							};
+
+	private SimulationConfig		config;
+	private double						averageSpread;
+	private double						averageBids;
+	private double						averageAsks;
+	private int							rounds;
+	private long						elapsedNanos;
+
+	public SweepResult(SimulationConfig config, double averageSpread,
+								double averageBids, double averageAsks, int rounds,
+								long elapsedNanos) {
+		this.config = config;
+		this.averageSpread = averageSpread;
+		this.averageBids = averageBids;
+		this.averageAsks = averageAsks;
+		this.rounds = rounds;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	// get the config the simulation ran with
+	public SimulationConfig getConfig() {
+		return config;
+	}
+
+	// get the average spread of the run
+	public double getAverageSpread() {
+		return averageSpread;
+	}
+
+	// get the average size of the buy book of the run
+	public double getAverageBids() {
+		return averageBids;
+	}
+
+	// get the average size of the sell book of the run
+	public double getAverageAsks() {
+		return averageAsks;
+	}
+
+	// get the number of rounds that were run
+	public int getRounds() {
+		return rounds;
+	}
+
+	// get the time the run took
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	// get the speed of the run in rounds per second
+	public double getRoundsPerSecond() {
+		return (elapsedNanos == 0) ? 0.0 : rounds * 1e9 / elapsedNanos;
+	}
+
+	// get the unrounded value of a result column or numeric config parameter
+	public double getValue(String column) {
+		if (column.equals("spread")) return averageSpread;
+		if (column.equals("bids")) return averageBids;
+		if (column.equals("asks")) return averageAsks;
+		if (column.equals("rounds")) return rounds;
+		if (column.equals("seconds")) return elapsedNanos / 1e9;
+		if (column.equals("rate")) return getRoundsPerSecond();
+		return config.getDouble(column);
+	}
+
+	// get the value of a result column or config parameter for printing
+	public String get(String column) {
+		if (column.equals("spread")) return String.format("%.4f", averageSpread);
+		if (column.equals("bids")) return String.format("%.4f", averageBids);
+		if (column.equals("asks")) return String.format("%.4f", averageAsks);
+		if (column.equals("rounds")) return Integer.toString(rounds);
+		if (column.equals("seconds")) return String.format("%.3f",
+				elapsedNanos / 1e9);
+		if (column.equals("rate")) return String.format("%.0f", getRoundsPerSecond());
+		return config.get(column);
+	}
+
+	// get the header of a table with the given columns
+	public static String header(List<String> columns) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(columns.get(i));
+		}
+		return sb.toString();
+	}
+
+	// get this result as a row of a table with the given columns
+	public String row(List<String> columns) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(get(columns.get(i)));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Sweep Runner
+ * 
+ * Runs the independent simulations of a parameter sweep on a pool of worker threads.  The
+ * workers all take their next simulation from one shared queue, so a thread that finishes
+ * a short run immediately picks up more work and no core sits idle while another works
+ * through a long one.  Results come back in grid order and can be streamed out as a table
+ * while the rest of the sweep is still running.  With a ResultCache set, points that have
+ * already been run are read from the cache instead of being run again.  A config with a
+ * tolerance stops each run once its estimates have converged (see ConvergenceMonitor).
+ * Cancelling the future of a run (with interruption) stops it at the end of its round.
+ */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SweepRunner {
+
+	private ExecutorService	pool;
+	private int					threads;
+	private ResultCache		cache;  // results of earlier runs, null for none
+
+	// run sweeps on the given number of threads
+	public SweepRunner(int threads) {
+		this.threads = threads;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int	count	= 0;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "sweep-worker-" + (count++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	// run sweeps on every available core
+	public SweepRunner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	// read and store results in a cache (null for none)
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+
+	// get the number of worker threads
+	public int getThreads() {
+		return threads;
+	}
+
+	// run a single simulation to completion and collect its result
+	public static SweepResult runOne(SimulationConfig config) {
+		long start = System.nanoTime();
+		MarketSimulation das = config.build();
+		double tolerance = config.getDouble("tolerance");
+		if (tolerance <= 0) {
+			while (!das.isDone()) {
+				das.nextBid();
+				checkCancelled();
+			}
+			return new SweepResult(config, das.getAverageSpread(), das
+					.getAverageBids(), das.getAverageAsks(), das.getCurrentRound(),
+					System.nanoTime() - start);
+		}
+
+		// stop early once the estimates have converged, and leave out the warm-up
+		ConvergenceMonitor monitor = new ConvergenceMonitor(tolerance);
+		monitor.attach(das);
+		while (!das.isDone() && !monitor.isConverged()) {
+			das.nextBid();
+			checkCancelled();
+		}
+		return new SweepResult(config, monitor.getMean(ConvergenceMonitor.SPREAD),
+				monitor.getMean(ConvergenceMonitor.BIDS), monitor
+						.getMean(ConvergenceMonitor.ASKS), das.getCurrentRound(),
+				System.nanoTime() - start);
+	}
+
+	// give up on a run whose future was cancelled, the pool interrupts its thread
+	private static void checkCancelled() {
+		if (Thread.interrupted()) throw new CancellationException(
+				"simulation cancelled");
+	}
+
+	// queue a single simulation on the pool, or answer it from the cache
+	public Future<SweepResult> submit(final SimulationConfig config) {
+		final ResultCache c = cache;
+		if (c != null) {
+			final SweepResult cached = cacheGet(c, config);
+			if (cached != null) {
+				FutureTask<SweepResult> done = new FutureTask<SweepResult>(
+						new Callable<SweepResult>() {
+							public SweepResult call() {
+								return cached;
+							}
+						});
+				done.run();
+				return done;
+			}
+		}
+		return pool.submit(new Callable<SweepResult>() {
+			public SweepResult call() throws IOException {
+				SweepResult r = runOne(config);
+				if (c != null) c.put(r);
+				return r;
+			}
+		});
+	}
+
+	// look a config up in the cache
+	private static SweepResult cacheGet(ResultCache c, SimulationConfig config) {
+		try {
+			return c.get(config);
+		} catch (IOException e) {
+			throw new RuntimeException("could not read result cache", e);
+		}
+	}
+
+	// run every config and return the results in the same order
+	public List<SweepResult> run(List<SimulationConfig> configs) {
+		return run(configs, null, null);
+	}
+
+	// run every config and return the results in the same order; if out is not null each
+	// row of the table with the given columns is printed as soon as it and every row
+	// before it are done
+	public List<SweepResult> run(List<SimulationConfig> configs,
+			List<String> columns, PrintStream out) {
+		List<Future<SweepResult>> futures = new ArrayList<Future<SweepResult>>();
+		for (int i = 0; i < configs.size(); i++) {
+			futures.add(submit(configs.get(i)));
+		}
+
+		if (out != null) out.println(SweepResult.header(columns));
+		List<SweepResult> results = new ArrayList<SweepResult>();
+		for (int i = 0; i < futures.size(); i++) {
+			SweepResult r = await(futures.get(i));
+			results.add(r);
+			if (out != null) {
+				out.println(r.row(columns));
+				out.flush();
+			}
+		}
+		return results;
+	}
+
+	// run every point of a grid, printing the axes and results as they finish
+	public List<SweepResult> run(ParameterGrid grid, PrintStream out) {
+		List<String> columns = new ArrayList<String>(grid.getAxes());
+		columns.addAll(Arrays.asList(SweepResult.RESULT_COLUMNS));
+		return run(grid.getConfigs(), columns, out);
+	}
+
+	// wait for a result, turning a failed simulation into a RuntimeException
+	public static SweepResult await(Future<SweepResult> f) {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted waiting for sweep", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("simulation failed", e.getCause());
+		}
+	}
+
+	// stop the worker threads
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	// runs the sweeps from DASimulation.main ("das", over exp) or CISimulation.main ("ci",
+	// over delta) in parallel: SweepRunner <das|ci> [threads] [masterSeed]
+	// (the grid only reproduces, and so only hits the cache, with a fixed master seed)
+	public static void main(String[] args) {
+		String model = (args.length > 0) ? args[0] : SimulationConfig.DAS;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime
+				.getRuntime().availableProcessors();
+
+		ParameterGrid grid = new ParameterGrid(new SimulationConfig(model));
+		if (args.length > 2) grid.setMasterSeed(Long.parseLong(args[2]));
+		if (model.equals(SimulationConfig.DAS)) grid.range("exp", 1, 1000, 1);
+		else grid.range("delta", 0.1, 100, 0.1);
+
+		SweepRunner runner = new SweepRunner(threads);
+		// run with -Ddas.cache=<file> to reuse the results of earlier sweeps
+		ResultCache cache = null;
+		if (System.getProperty("das.cache") != null) {
+			try {
+				cache = new ResultCache(new File(System.getProperty("das.cache")));
+			} catch (IOException e) {
+				throw new RuntimeException("could not open result cache", e);
+			}
+			runner.setCache(cache);
+		}
+		long start = System.nanoTime();
+		try {
+			runner.run(grid, System.out);
+		} finally {
+			runner.shutdown();
+			// closing writes the cache's index, so the next open doesn't scan the file
+			if (cache != null) {
+				try {
+					cache.close();
+				} catch (IOException e) {
+					throw new RuntimeException("could not close result cache", e);
+				}
+			}
+		}
+		if (cache != null) {
+			System.out.printf("# %d of %d points from the cache", cache.getHits(),
+					grid.size());
+			System.out.println();
+		}
+		System.out.printf("# %d simulations on %d threads in %.1f s", grid.size(),
+				threads, (System.nanoTime() - start) / 1e9);
+		System.out.println();
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Trading Ledger - implements BookListener, RoundListener
+ * 
+ * Incremental accounting of every agent's trading, updated from the fills in the limit order
+ * book instead of scanning the agents.  Positions are kept with average cost accounting:
+ * the position is the net number of shares an agent has traded, realized PnL is booked when
+ * a position is reduced, and unrealized PnL is the open position marked at the current price
+ * (midpoint, or the last transaction price when one side of the book is empty).  Everything
+ * is kept in primitive arrays per agent and per agent type, so every query is O(1) and the
+ * per-type totals can be sampled into a time series every round.  Interest and dividends
+ * are not trading, so they are not part of the PnL.
+ * 
+ * Drawdowns are of the trading PnL marked to market.  The per-type drawdowns are checked at
+ * the end of every round from the type totals (O(1) a round however many agents there are);
+ * an agent's drawdown is checked at the mark price before and after each of its own fills
+ * and whenever it is queried, so it can miss a dip the agent recovered from in between.
+ * 
+ * Run DASimulation or CISimulation with -Ddas.ledger=true to print the ledger of every run.
+ */
+import java.util.*;
+
+public class TradingLedger implements BookListener, RoundListener {
+
+	private static final int			NUM_TYPES	= 4;
+
+	private IdentityHashMap<Agent, Integer>	slots;  // ledger slot of each agent seen
+	private int							numAgents;
+	private Agent[]					agents;
+	private int[]						startShares;  // shares each agent held before its first trade
+	private int[]						position;  // net shares traded
+	private double[]					cost;  // cost of the open position (negative when short)
+	private double[]					realized;
+	private double[]					turnover;  // value of all shares traded
+	private int[]						fills;
+	private double[]					peak;  // highest marked trading PnL seen at a check
+	private double[]					drawdown;  // largest drop from that peak
+
+	private long[]						typePosition;
+	private double[]					typeCost;
+	private double[]					typeRealized;
+	private double[]					typeTurnover;
+	private long[]						typeFills;
+	private double[]					typePeak;
+	private double[]					typeDrawdown;
+
+	private double						mark;  // current mark to market price
+	private int							round;
+	private int							sampleInterval;  // rounds between time series samples, 0 for none
+	private double[][]				series;  // trading PnL of each type at each sample
+	private int							samples;
+
+	// sample the per-type PnL into a time series every sampleInterval rounds (0 for never)
+	public TradingLedger(int sampleInterval) {
+		this.slots = new IdentityHashMap<Agent, Integer>();
+		this.numAgents = 0;
+		int capacity = 16;
+		this.agents = new Agent[capacity];
+		this.startShares = new int[capacity];
+		this.position = new int[capacity];
+		this.cost = new double[capacity];
+		this.realized = new double[capacity];
+		this.turnover = new double[capacity];
+		this.fills = new int[capacity];
+		this.peak = new double[capacity];
+		this.drawdown = new double[capacity];
+
+		this.typePosition = new long[NUM_TYPES];
+		this.typeCost = new double[NUM_TYPES];
+		this.typeRealized = new double[NUM_TYPES];
+		this.typeTurnover = new double[NUM_TYPES];
+		this.typeFills = new long[NUM_TYPES];
+		this.typePeak = new double[NUM_TYPES];
+		this.typeDrawdown = new double[NUM_TYPES];
+
+		this.mark = 0.0;
+		this.round = 0;
+		this.sampleInterval = sampleInterval;
+		this.series = new double[NUM_TYPES][16];
+		this.samples = 0;
+	}
+
+	public TradingLedger() {
+		this(0);
+	}
+
+	// start keeping the books for a simulation
+	public void attach(DAS das) {
+		das.addRoundListener(this);
+		das.getLOB().addListener(this);
+	}
+
+	// book a fill for both sides of the trade
+	public void tradeCleared(Agent buyer, Agent seller, int size, double price) {
+		// the book has already moved the shares, so back the trade out for first timers
+		int b = slot(buyer, buyer.getShares() - size);
+		int s = slot(seller, seller.getShares() + size);
+		// check both sides at the old mark, then at the trade price
+		checkDrawdown(b);
+		checkDrawdown(s);
+		book(b, buyer.getType(), size, price);
+		book(s, seller.getType(), -size, price);
+		mark = price;
+		checkDrawdown(b);
+		checkDrawdown(s);
+	}
+
+	// orders are not part of the ledger
+	public void orderSubmitted(Agent agent, boolean isLimit, boolean isSell,
+			int size, double price) {
+	}
+
+	// expirations are not part of the ledger
+	public void ordersExpired(int round, int count) {
+	}
+
+	// interest and dividends are not part of the ledger
+	public void interestApplied(MarketSimulation sim, int round, double interestRate,
+			double dividend) {
+	}
+
+	// mark to market at the end of the round and sample the time series
+	public void roundCompleted(MarketSimulation sim, int round) {
+		double mid = sim.getQuotes().getMidpointPrice();
+		markToMarket((mid > 0) ? mid : mark, round);
+	}
+
+	// mark the types to the given price, updating their drawdowns, and sample the time
+	// series if it is due (agents are marked when they trade or are queried)
+	public void markToMarket(double price, int round) {
+		this.round = round;
+		this.mark = price;
+
+		for (int t = 0; t < NUM_TYPES; t++) {
+			double pnl = getTypePnL(t);
+			if (pnl > typePeak[t]) typePeak[t] = pnl;
+			if (typePeak[t] - pnl > typeDrawdown[t]) typeDrawdown[t] = typePeak[t]
+					- pnl;
+		}
+
+		if (sampleInterval > 0 && round % sampleInterval == 0) sample();
+	}
+
+	// update the peak and drawdown of slot i with its trading PnL at the current mark
+	private void checkDrawdown(int i) {
+		double pnl = realized[i] + position[i] * mark - cost[i];
+		if (pnl > peak[i]) peak[i] = pnl;
+		if (peak[i] - pnl > drawdown[i]) drawdown[i] = peak[i] - pnl;
+	}
+
+	// get the ledger slot of an agent, adding it the first time it trades
+	private int slot(Agent a, int shares) {
+		Integer i = slots.get(a);
+		if (i != null) return i;
+		if (numAgents == agents.length) grow();
+		agents[numAgents] = a;
+		startShares[numAgents] = shares;
+		slots.put(a, numAgents);
+		return numAgents++;
+	}
+
+	// apply a trade of qty shares (negative to sell) at price to slot i of type t
+	private void book(int i, int t, int qty, double price) {
+		int x = position[i];
+		double c = cost[i];
+		double r = 0.0;
+
+		// reduce an opposite position first, booking the realized PnL at the average cost
+		if (x != 0 && (x > 0) != (qty > 0)) {
+			int close = (Math.abs(qty) < Math.abs(x)) ? -qty : x;
+			double avg = c / x;
+			r = close * (price - avg);
+			x -= close;
+			c -= close * avg;
+			qty += close;
+		}
+		// whatever is left opens or adds to a position at the trade price
+		x += qty;
+		c += qty * price;
+
+		if (t >= 0 && t < NUM_TYPES) {
+			typePosition[t] += x - position[i];
+			typeCost[t] += c - cost[i];
+			typeRealized[t] += r;
+			typeTurnover[t] += Math.abs(x - position[i]) * price;
+			typeFills[t]++;
+		}
+		turnover[i] += Math.abs(x - position[i]) * price;
+		realized[i] += r;
+		position[i] = x;
+		cost[i] = c;
+		fills[i]++;
+	}
+
+	// double the size of the per agent arrays
+	private void grow() {
+		int n = agents.length * 2;
+		agents = Arrays.copyOf(agents, n);
+		startShares = Arrays.copyOf(startShares, n);
+		position = Arrays.copyOf(position, n);
+		cost = Arrays.copyOf(cost, n);
+		realized = Arrays.copyOf(realized, n);
+		turnover = Arrays.copyOf(turnover, n);
+		fills = Arrays.copyOf(fills, n);
+		peak = Arrays.copyOf(peak, n);
+		drawdown = Arrays.copyOf(drawdown, n);
+	}
+
+	// add the current PnL of every type to the time series
+	private void sample() {
+		if (samples == series[0].length) {
+			for (int t = 0; t < NUM_TYPES; t++) {
+				series[t] = Arrays.copyOf(series[t], samples * 2);
+			}
+		}
+		for (int t = 0; t < NUM_TYPES; t++) {
+			series[t][samples] = getTypePnL(t);
+		}
+		samples++;
+	}
+
+	// get the price positions are currently marked at
+	public double getMarkPrice() {
+		return mark;
+	}
+
+	// get the last round the ledger saw
+	public int getRound() {
+		return round;
+	}
+
+	// get the number of agents that have traded so far
+	public int getNumAgents() {
+		return numAgents;
+	}
+
+	// has this agent traded yet?
+	public boolean contains(Agent a) {
+		return slots.containsKey(a);
+	}
+
+	// get the number of shares the agent holds
+	public int getInventory(Agent a) {
+		Integer i = slots.get(a);
+		return (i == null) ? a.getShares() : startShares[i] + position[i];
+	}
+
+	// get the net number of shares the agent has traded
+	public int getPosition(Agent a) {
+		Integer i = slots.get(a);
+		return (i == null) ? 0 : position[i];
+	}
+
+	// get the PnL the agent has locked in by reducing positions
+	public double getRealizedPnL(Agent a) {
+		Integer i = slots.get(a);
+		return (i == null) ? 0.0 : realized[i];
+	}
+
+	// get the PnL of the agent's open position at the current mark
+	public double getUnrealizedPnL(Agent a) {
+		Integer i = slots.get(a);
+		return (i == null) ? 0.0 : position[i] * mark - cost[i];
+	}
+
+	// get the value of everything the agent has traded
+	public double getTurnover(Agent a) {
+		Integer i = slots.get(a);
+		return (i == null) ? 0.0 : turnover[i];
+	}
+
+	// get the number of fills the agent took part in
+	public int getFills(Agent a) {
+		Integer i = slots.get(a);
+		return (i == null) ? 0 : fills[i];
+	}
+
+	// get the largest drop of the agent's trading PnL from its peak, checked at its fills
+	// and at each call (at the current mark)
+	public double getMaxDrawdown(Agent a) {
+		Integer i = slots.get(a);
+		if (i == null) return 0.0;
+		checkDrawdown(i);
+		return drawdown[i];
+	}
+
+	// get the net number of shares traded by all agents of a type
+	public long getTypePosition(int type) {
+		return typePosition[type];
+	}
+
+	// get the realized PnL of all agents of a type
+	public double getTypeRealizedPnL(int type) {
+		return typeRealized[type];
+	}
+
+	// get the unrealized PnL of all agents of a type at the current mark
+	public double getTypeUnrealizedPnL(int type) {
+		return typePosition[type] * mark - typeCost[type];
+	}
+
+	// get the total trading PnL of all agents of a type
+	public double getTypePnL(int type) {
+		return typeRealized[type] + getTypeUnrealizedPnL(type);
+	}
+
+	// get the value of everything traded by agents of a type
+	public double getTypeTurnover(int type) {
+		return typeTurnover[type];
+	}
+
+	// get the number of fills agents of a type took part in
+	public long getTypeFills(int type) {
+		return typeFills[type];
+	}
+
+	// get the largest drop of a type's trading PnL from its peak, checked every round
+	public double getTypeMaxDrawdown(int type) {
+		return typeDrawdown[type];
+	}
+
+	// get the number of samples in the time series
+	public int getNumSamples() {
+		return samples;
+	}
+
+	// get the trading PnL of a type at each sample of the time series
+	public double[] getTypeSeries(int type) {
+		return Arrays.copyOf(series[type], samples);
+	}
+
+	// print the ledger totals of each agent type
+	public void printTypeSummary() {
+		System.out.println("+--+----------+------------+------------+------------+--------------+------------+");
+		System.out.println("|Tp| Position |  Realized  | Unrealized |  Drawdown  |   Turnover   |   Fills    |");
+		System.out.println("|--|----------|------------|------------|------------|--------------|------------|");
+		for (int t = 0; t < NUM_TYPES; t++) {
+			if (typeFills[t] == 0) continue;
+			System.out.printf("|%2d|%10d|%12.2f|%12.2f|%12.2f|%14.2f|%12d|", t,
+					typePosition[t], typeRealized[t], getTypeUnrealizedPnL(t),
+					typeDrawdown[t], typeTurnover[t], typeFills[t]);
+			System.out.println();
+		}
+		System.out.println("+--+----------+------------+------------+------------+--------------+------------+");
+		System.out.println();
+	}
+}
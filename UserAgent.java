@@ -1,17 +1,18 @@
 /*
  * Author: Dylan Bowman
  * 
- * User Agent implements Agent
+ * User Agent implements InterestBearingAgent
  * The user agent that registers the user actions from the GUI and stores its current state.
  */
 
-public class UserAgent implements Agent {
+public class UserAgent implements InterestBearingAgent {
 
 	private double	money;
 	private int	shares;
 	private int type;
 	private int	pid;
 	private int	tradesCompleted;
+	private InterestAccrual.Account account	= new InterestAccrual.Account();  // paid lazily
 	private LimitOrderBook	lob;
 
 	public UserAgent(double startingMoney, int startingShares,
@@ -36,16 +37,19 @@ public class UserAgent implements Agent {
 
 	// get the user's current money level
 	public double getMoney() {
+		settle();
 		return money;
 	}
 	
 	// get the user's current money level, formatted nicely
 	public String getFormattedMoney() {
+		settle();
 		return String.format("%6.2f", money);
 	}
 
 	// set the user's current money level
 	public boolean setMoney(double newMoney) {
+		settle();
 		if (newMoney < 0) return false;
 		money = newMoney;
 		return true;
@@ -53,11 +57,13 @@ public class UserAgent implements Agent {
 
 	// get the current number of the user's shares
 	public int getShares() {
+		settle();
 		return shares;
 	}
 
 	// set the current number of the user's shares
 	public boolean setShares(int newShares) {
+		settle();
 		if (newShares < 0) return false;
 		shares = newShares;
 		return true;
@@ -103,8 +109,19 @@ public class UserAgent implements Agent {
 		return success;
 	}
 	
+	// have interest and dividends paid through the given accrual from now on
+	public void setInterestAccrual(InterestAccrual accrual) {
+		money = account.setAccrual(accrual, money, shares);
+	}
+
+	// catch up on the interest and dividends paid since this agent last settled
+	private void settle() {
+		money = account.settle(money, shares);
+	}
+
 	// print the user's final data
 	public void printFinalData(double finalPrice) {
+		settle();
 		System.out.printf("%3d, %2d, %8.2f, %5d, %8.2f", pid, type, money,
 				shares, money + (shares * finalPrice));
 		System.out.println();
@@ -0,0 +1,80 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * Zero Intelligence Order Flow
+ * 
+ * Pre-generates the random decisions of zero intelligence order flow in batches: a buffer
+ * of uniforms is filled in one tight loop (SimRandom.nextDoubles) and turned into
+ * (limit or market, sell or buy, price offset) tuples in one pass, so each order just
+ * reads its tuple instead of making two or three calls into a random number generator.
+ * Every tuple takes three uniforms whether or not the order needs a price, so the stream
+ * is not the same as PracticeAgent's draws, but every decision has the same distribution.
+ */
+
+public class ZeroIntelOrderFlow {
+
+	private SimRandom		random;
+	private double			limitProb;
+	private double			sellProb;
+	private double			interval;
+
+	private double[]		uniforms;
+	private boolean[]		limit;
+	private boolean[]		sell;
+	private double[]		offset;  // uniform in [0, interval)
+	private int				next;  // the next unused tuple
+
+	// create a flow of orders that are limit orders with probability lp, sells with
+	// probability sp and priced up to interval off the book, generated batch at a time
+	public ZeroIntelOrderFlow(SimRandom random, double lp, double sp,
+										double interval, int batch) {
+		this.random = random;
+		this.limitProb = lp;
+		this.sellProb = sp;
+		this.interval = interval;
+		this.uniforms = new double[3 * batch];
+		this.limit = new boolean[batch];
+		this.sell = new boolean[batch];
+		this.offset = new double[batch];
+		this.next = batch;
+	}
+
+	public ZeroIntelOrderFlow(SimRandom random, double lp, double sp,
+										double interval) {
+		this(random, lp, sp, interval, 4096);
+	}
+
+	// move on to the next order and get its index into the current batch
+	public int next() {
+		if (next == limit.length) refill();
+		return next++;
+	}
+
+	// is order k a limit order (else a market order)?
+	public boolean isLimit(int k) {
+		return limit[k];
+	}
+
+	// is order k a sell (else a buy)?
+	public boolean isSell(int k) {
+		return sell[k];
+	}
+
+	// get the price offset of order k
+	public double getOffset(int k) {
+		return offset[k];
+	}
+
+	// generate the next batch of tuples
+	private void refill() {
+		double[] u = uniforms;
+		random.nextDoubles(u, 0, u.length);
+		double lp = limitProb, sp = sellProb, iv = interval;
+		for (int k = 0; k < limit.length; k++) {
+			limit[k] = u[3 * k] < lp;
+			sell[k] = u[3 * k + 1] < sp;
+			offset[k] = u[3 * k + 2] * iv;
+		}
+		next = 0;
+	}
+}
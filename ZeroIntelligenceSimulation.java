@@ -0,0 +1,537 @@
+/*
+ * Author: Dylan Bowman
+ * 
+ * ZeroIntelligenceSimulation class - implements MarketSimulation, MarketQuotes
+ * A specialized engine for markets of zero intelligence agents only (a type 0
+ * DASimulation).  The agents are all alike apart from their money and shares, so they are
+ * kept in primitive arrays, their order flow is generated inline (ZeroIntelOrderFlow) and
+ * the book is primitive too: the resting orders live in slots of parallel arrays, the two
+ * sides are binary heaps of slot numbers (with each slot's heap position, so an expired
+ * order comes out in O(log n)), and since every order lives for the same number of rounds
+ * the expiration book is a plain FIFO ring.  No Agent calls and no objects per order.
+ * 
+ * Orders are matched with the same rules as LimitOrderBook and its ClearingHouse (unit
+ * orders, self trades allowed, orders that fail a check thrown away or put back exactly as
+ * there), and the rounds run as in DASimulation, so the statistics are the same as a type
+ * 0 DASimulation's; the sample path is not.  There is no LimitOrderBook and no user agent,
+ * so the engine is a MarketSimulation rather than a DAS; the quotes come from getQuotes,
+ * which is this.
+ */
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class ZeroIntelligenceSimulation implements MarketSimulation, MarketQuotes {
+
+	private static final int	FUND_PRICE	= 50;  // as in PracticeAgent
+
+	// states of an order slot
+	private static final byte	FREE			= 0;
+	private static final byte	LIVE			= 1;  // resting in the book
+	private static final byte	DEAD			= 2;  // traded or thrown away, still in the FIFO
+
+	private int						rounds;
+	private int						currentRound;
+	private boolean				expirationOn;
+	private double					lp;
+	private double					sp;
+	private double					interval;
+	private int						exp;
+	private double					interestRate;
+	private double					dividend;
+	private int						interestPeriod;
+
+	// the agents
+	private int						N;
+	private double[]				money;
+	private int[]					shares;
+	private int[]					tradesCompleted;
+	private SimRandom				pick;  // chooses the agent of each round
+	private ZeroIntelOrderFlow	flow;
+
+	// the order slots
+	private double[]				price;
+	private int[]					owner;
+	private int[]					expiration;
+	private int[]					heapPos;
+	private byte[]					state;
+	private int[]					free;
+	private int						numFree;
+
+	// the book: a max heap of bids and a min heap of asks, and the expirations in order
+	private int[]					bids;
+	private int						numBids;
+	private int[]					asks;
+	private int						numAsks;
+	private int[]					fifo;
+	private int						fifoHead;
+	private int						fifoSize;
+
+	private double[]				priceHistory;
+	private double					averageSpread;
+	private double					averageBids;
+	private double					averageAsks;
+	private double					lastTransactionPrice;
+
+	private EngineProfiler		profiler;  // optional round timings, null when off
+	private ArrayList<RoundListener>	roundListeners;
+
+	public ZeroIntelligenceSimulation(int rounds, int N, boolean exp, double lp,
+												double sp, double interval, int ex,
+												Random random) {
+		this.rounds = rounds;
+		this.currentRound = 0;
+		this.expirationOn = exp;
+		this.lp = lp;
+		this.sp = sp;
+		this.interval = interval;
+		this.exp = ex;
+		this.interestRate = 1.03;  // hard coded as in DASimulation
+		this.dividend = 1.035;
+		this.interestPeriod = 1000;
+
+		this.N = N;
+		this.money = new double[N];
+		this.shares = new int[N];
+		this.tradesCompleted = new int[N];
+		for (int i = 0; i < N; i++) {
+			money[i] = 1000.00;
+			shares[i] = 20;
+		}
+		this.pick = SimRandom.split(random);
+		this.flow = new ZeroIntelOrderFlow(SimRandom.split(random), lp, sp,
+				interval);
+
+		int capacity = 1024;
+		this.price = new double[capacity];
+		this.owner = new int[capacity];
+		this.expiration = new int[capacity];
+		this.heapPos = new int[capacity];
+		this.state = new byte[capacity];
+		this.free = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			free[i] = capacity - 1 - i;
+		}
+		this.numFree = capacity;
+		this.bids = new int[capacity];
+		this.asks = new int[capacity];
+		this.fifo = new int[capacity];
+
+		this.priceHistory = new double[rounds];
+		this.roundListeners = new ArrayList<RoundListener>();
+	}
+
+	public ZeroIntelligenceSimulation(int rounds, int N, boolean exp, double lp,
+												double sp, double interval, int ex) {
+		this(rounds, N, exp, lp, sp, interval, ex, new SimRandom());
+	}
+
+	// get the type of the simulation (always 0, zero intelligence only)
+	public int getType() {
+		return 0;
+	}
+
+	public int getNumZeroIntel() {
+		return N;
+	}
+
+	public int getNumChartists() {
+		return 0;
+	}
+
+	public int getNumAgents() {
+		return N;
+	}
+
+	// get the price history of the last rounds
+	public Double[] getHistory(int length) {
+		Double[] hist = new Double[length];
+		for (int i = 0; i < length; i++) {
+			hist[i] = priceHistory[currentRound - length + i];
+		}
+		return hist;
+	}
+
+	// get the whole history
+	public Double[] getHistory() {
+		return getHistory(currentRound);
+	}
+
+	public int getNumRounds() {
+		return rounds;
+	}
+
+	public int getCurrentRound() {
+		return currentRound;
+	}
+
+	// the engine is its own book of quotes
+	public MarketQuotes getQuotes() {
+		return this;
+	}
+
+	// get the price of the last trade (0 before the first)
+	public double getLastTransactionPrice() {
+		return lastTransactionPrice;
+	}
+
+	// get the best (lowest) asking price, or -1
+	public double getBestAsk() {
+		return (numAsks > 0) ? price[asks[0]] : -1;
+	}
+
+	// get the best (highest) bidding price, or -1
+	public double getBestBid() {
+		return (numBids > 0) ? price[bids[0]] : -1;
+	}
+
+	// get the market spread, or -1 if a side is empty
+	public double getMarketSpread() {
+		if (numBids == 0 || numAsks == 0) return -1;
+		return price[asks[0]] - price[bids[0]];
+	}
+
+	// get the midpoint price, or -1 if a side is empty
+	public double getMidpointPrice() {
+		if (numBids == 0 || numAsks == 0) return -1;
+		return (price[asks[0]] + price[bids[0]]) / 2.0;
+	}
+
+	public int getBuyBookSize() {
+		return numBids;
+	}
+
+	public int getSellBookSize() {
+		return numAsks;
+	}
+
+	// run a round: interest, history, averages, expiries, then a random agent's order
+	public boolean nextBid() {
+		if (isDone()) return false;
+		long start = 0;
+		if (profiler != null) start = System.nanoTime();
+
+		if ((currentRound % interestPeriod) == 0 && currentRound > 1) {
+			for (int i = 0; i < N; i++) {
+				money[i] = money[i] * interestRate + shares[i] * dividend;
+			}
+			for (int i = 0; i < roundListeners.size(); i++) {
+				roundListeners.get(i).interestApplied(this, currentRound,
+						interestRate, dividend);
+			}
+		}
+
+		priceHistory[currentRound] = getMidpointPrice();
+		if (numBids > 0 && numAsks > 0) averageSpread += price[asks[0]]
+				- price[bids[0]];
+		averageBids += numBids;
+		averageAsks += numAsks;
+
+		if (expirationOn) clearExpired(currentRound);
+
+		boolean success = submitOrder(pick.nextInt(N), currentRound++);
+		if (profiler != null) profiler.record(EngineProfiler.ROUND, System
+				.nanoTime()
+				- start);
+		for (int i = 0; i < roundListeners.size(); i++) {
+			roundListeners.get(i).roundCompleted(this, currentRound - 1);
+		}
+		return success;
+	}
+
+	// agent a's order, decided as PracticeAgent decides it
+	private boolean submitOrder(int a, int round) {
+		int k = flow.next();
+		boolean success;
+		if (flow.isLimit(k)) {
+			int expires = expirationOn ? round + exp : round;
+			if (flow.isSell(k)) {
+				double p = flow.getOffset(k) + ((numBids > 0) ? price[bids[0]] : FUND_PRICE);
+				success = limitOrder(true, a, p, expires);
+			} else {
+				double p = flow.getOffset(k)
+						+ ((numAsks > 0) ? price[asks[0]] - interval : FUND_PRICE
+								- interval);
+				success = limitOrder(false, a, p, expires);
+			}
+		} else {
+			success = marketOrder(flow.isSell(k), a);
+		}
+		if (success) tradesCompleted[a]++;
+		return success;
+	}
+
+	// rest a limit order in the book, or cross it if it is marketable
+	private boolean limitOrder(boolean sell, int a, double p, int expires) {
+		if (p < 0) return false;
+		if (sell && numBids > 0 && p <= price[bids[0]]) return marketOrder(true, a);
+		if (!sell && numAsks > 0 && p >= price[asks[0]]) return marketOrder(false,
+				a);
+
+		int slot = allocate();
+		price[slot] = p;
+		owner[slot] = a;
+		expiration[slot] = expires;
+		state[slot] = LIVE;
+		if (sell) asks = push(asks, numAsks++, slot, false);
+		else bids = push(bids, numBids++, slot, true);
+		if (expirationOn) {
+			if (fifoSize == fifo.length) growFifo();
+			fifo[(fifoHead + fifoSize++) % fifo.length] = slot;
+		}
+		return true;
+	}
+
+	// a unit market order against the best orders of the other side, checked like the
+	// ClearingHouse: an order whose owner can't trade is thrown away and the next one
+	// tried, while an order the submitter can't trade with goes back in the book
+	private boolean marketOrder(boolean sell, int a) {
+		while (true) {
+			int lo = sell ? pollBid() : pollAsk();
+			if (lo < 0) return false;
+			int buyer = sell ? owner[lo] : a;
+			int seller = sell ? a : owner[lo];
+			double p = price[lo];
+			if (shares[seller] - 1 >= 0) {
+				if (money[buyer] - p >= 0) {
+					shares[seller]--;
+					money[seller] += p;
+					shares[buyer]++;
+					money[buyer] -= p;
+					lastTransactionPrice = p;
+					retire(lo);
+					return true;
+				} else if (!sell) {
+					putBack(lo, sell);
+					return false;
+				}
+			} else if (sell) {
+				putBack(lo, sell);
+				return false;
+			}
+			retire(lo);
+		}
+	}
+
+	// remove the orders that expire in or before round
+	private void clearExpired(int round) {
+		while (fifoSize > 0 && expiration[fifo[fifoHead]] <= round) {
+			int slot = fifo[fifoHead];
+			fifoHead = (fifoHead + 1) % fifo.length;
+			fifoSize--;
+			if (state[slot] == LIVE) {
+				if (heapPos[slot] >= 0) removeFromBook(slot);
+			}
+			release(slot);
+		}
+	}
+
+	// an order that left the book; its slot is reused once it leaves the FIFO too
+	private void retire(int slot) {
+		if (expirationOn) state[slot] = DEAD;
+		else release(slot);
+	}
+
+	// put a polled order back on its side of the book (a market sell polled a bid)
+	private void putBack(int slot, boolean polledBySell) {
+		if (polledBySell) bids = push(bids, numBids++, slot, true);
+		else asks = push(asks, numAsks++, slot, false);
+	}
+
+	private void removeFromBook(int slot) {
+		// a live order is on the side it was polled from; find it by position
+		int pos = heapPos[slot];
+		if (pos < numBids && bids[pos] == slot) {
+			removeAt(bids, --numBids, pos, true);
+		} else {
+			removeAt(asks, --numAsks, pos, false);
+		}
+	}
+
+	private int pollBid() {
+		if (numBids == 0) return -1;
+		int top = bids[0];
+		removeAt(bids, --numBids, 0, true);
+		return top;
+	}
+
+	private int pollAsk() {
+		if (numAsks == 0) return -1;
+		int top = asks[0];
+		removeAt(asks, --numAsks, 0, false);
+		return top;
+	}
+
+	// heap helpers; max heaps order by highest price, min heaps by lowest
+	private boolean before(int x, int y, boolean max) {
+		return max ? price[x] > price[y] : price[x] < price[y];
+	}
+
+	private int[] push(int[] heap, int n, int slot, boolean max) {
+		if (n == heap.length) {
+			int[] h = new int[2 * n];
+			System.arraycopy(heap, 0, h, 0, n);
+			heap = h;
+		}
+		heap[n] = slot;
+		heapPos[slot] = n;
+		siftUp(heap, n, max);
+		return heap;
+	}
+
+	// remove the entry at pos of a heap that now holds n entries
+	private void removeAt(int[] heap, int n, int pos, boolean max) {
+		int removed = heap[pos];
+		heapPos[removed] = -1;
+		if (pos == n) return;
+		int last = heap[n];
+		heap[pos] = last;
+		heapPos[last] = pos;
+		siftDown(heap, n, pos, max);
+		if (heap[pos] == last) siftUp(heap, pos, max);
+	}
+
+	private void siftUp(int[] heap, int pos, boolean max) {
+		int slot = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			int p = heap[parent];
+			if (!before(slot, p, max)) break;
+			heap[pos] = p;
+			heapPos[p] = pos;
+			pos = parent;
+		}
+		heap[pos] = slot;
+		heapPos[slot] = pos;
+	}
+
+	private void siftDown(int[] heap, int n, int pos, boolean max) {
+		int slot = heap[pos];
+		int half = n >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			int c = heap[child];
+			int right = child + 1;
+			if (right < n && before(heap[right], c, max)) c = heap[child = right];
+			if (!before(c, slot, max)) break;
+			heap[pos] = c;
+			heapPos[c] = pos;
+			pos = child;
+		}
+		heap[pos] = slot;
+		heapPos[slot] = pos;
+	}
+
+	// slot management
+	private int allocate() {
+		if (numFree == 0) growSlots();
+		return free[--numFree];
+	}
+
+	private void release(int slot) {
+		state[slot] = FREE;
+		free[numFree++] = slot;
+	}
+
+	private void growSlots() {
+		int n = price.length;
+		double[] pr = new double[2 * n];
+		System.arraycopy(price, 0, pr, 0, n);
+		price = pr;
+		int[] o = new int[2 * n];
+		System.arraycopy(owner, 0, o, 0, n);
+		owner = o;
+		int[] e = new int[2 * n];
+		System.arraycopy(expiration, 0, e, 0, n);
+		expiration = e;
+		int[] h = new int[2 * n];
+		System.arraycopy(heapPos, 0, h, 0, n);
+		heapPos = h;
+		byte[] s = new byte[2 * n];
+		System.arraycopy(state, 0, s, 0, n);
+		state = s;
+		free = new int[2 * n];
+		for (int i = 0; i < n; i++) {
+			free[i] = 2 * n - 1 - i;
+		}
+		numFree = n;
+	}
+
+	private void growFifo() {
+		int[] f = new int[2 * fifo.length];
+		for (int i = 0; i < fifoSize; i++) {
+			f[i] = fifo[(fifoHead + i) % fifo.length];
+		}
+		fifo = f;
+		fifoHead = 0;
+	}
+
+	public boolean isDone() {
+		return currentRound == rounds;
+	}
+
+	// get the average spread over the rounds processed so far
+	public double getAverageSpread() {
+		return (currentRound == 0) ? 0.0 : averageSpread / currentRound;
+	}
+
+	// get the average size of the buy book over the rounds processed so far
+	public double getAverageBids() {
+		return (currentRound == 0) ? 0.0 : averageBids / currentRound;
+	}
+
+	// get the average size of the sell book over the rounds processed so far
+	public double getAverageAsks() {
+		return (currentRound == 0) ? 0.0 : averageAsks / currentRound;
+	}
+
+	// print data on the simulation
+	public void printData() {
+		System.out.printf("%6.4f, %6.4f, %6d, %6d", getMidpointPrice(),
+				getMarketSpread(), numBids, numAsks);
+		System.out.println();
+	}
+
+	// print the final price and every agent's final data, as DASimulation does
+	public void printResults() {
+		double finalPrice = getMidpointPrice();
+		System.out.println("Final Price = " + finalPrice);
+		for (int i = 0; i < N; i++) {
+			System.out.printf("%3d, %2d, %8.2f, %5d, %8.2f", i + 1, 0, money[i],
+					shares[i], money[i] + (shares[i] * finalPrice));
+			System.out.println();
+		}
+	}
+
+	// print the average spread with the same options as DASimulation
+	public void printAverageSpread(int i) {
+		if (i == 0) {
+			System.out.printf("%3.2f, %5.2f", 0.0, (averageSpread / rounds));
+			System.out.println();
+		} else if (i == 1) {
+			System.out.printf("%3d, %5.2f", 0, averageSpread / rounds);
+			System.out.println();
+		} else if (i == 2) {
+			System.out.printf("%3.2f, %5.2f", lp, averageSpread / rounds);
+			System.out.println();
+		} else if (i == 3) {
+			System.out.printf("%3.2f, %5.2f", sp, averageSpread / rounds);
+			System.out.println();
+		} else if (i == 4) {
+			System.out.printf("%4.2f, %5.2f", interval, averageSpread / rounds);
+			System.out.println();
+		} else if (i == 5) {
+			System.out.printf("%5d, %5.2f", exp, averageSpread / rounds);
+			System.out.println();
+		}
+	}
+
+	// times whole rounds only (the phases aren't separated)
+	public void setProfiler(EngineProfiler profiler) {
+		this.profiler = profiler;
+	}
+
+	public void addRoundListener(RoundListener listener) {
+		roundListeners.add(listener);
+	}
+}